@@ -0,0 +1,69 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the workspace fingerprint without cache, the raw xxHash64 throughput and the MD5 hash used before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class HashBenchmark {
+    @Param({"256", "2048"})
+    public int fileSizeMiB;
+
+    private Path directory;
+    private Path file;
+    private ByteBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("hash-benchmark");
+        file = directory.resolve("mapped.db");
+        final Random random = new Random(42);
+        final byte[] block = new byte[1024 * 1024];
+        try (OutputStream output = Files.newOutputStream(file)) {
+            for (int i = 0; i < fileSizeMiB; i++) {
+                random.nextBytes(block);
+                output.write(block);
+            }
+        }
+        buffer = ByteBuffer.allocateDirect(64 * 1024 * 1024);
+        random.nextBytes(block);
+        while (buffer.hasRemaining())
+            buffer.put(block, 0, Math.min(block.length, buffer.remaining()));
+        buffer.flip();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+    @Benchmark
+    public String contentFingerprint() throws IOException {
+        return HashUtils.getContentFingerprintFromFile(file.toString(), null);
+    }
+
+    @Benchmark
+    public String md5() throws IOException {
+        return HashUtils.getMd5HashFromFile(file.toString());
+    }
+
+    @Benchmark
+    public long xxHash64Chunk() {
+        return HashUtils.xxHash64(buffer.duplicate(), 0);
+    }
+}
@@ -0,0 +1,112 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.model.graph.Graph;
+import de.unibi.agbi.biodwh2.neo4j.server.model.CmdArgs;
+import org.openjdk.jmh.annotations.*;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the streaming import of nodes and edges into an embedded Neo4j database. Every iteration imports into a
+ * fresh database, so each measurement is a single cold import of the whole synthetic graph.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class ImportBenchmark {
+    @State(Scope.Benchmark)
+    public abstract static class ImportState {
+        @Param({"8"})
+        public int nodeLabels;
+        @Param({"50000"})
+        public int nodesPerLabel;
+        @Param({"8"})
+        public int edgeLabels;
+        @Param({"100000"})
+        public int edgesPerLabel;
+        @Param({"10"})
+        public int propertyWidth;
+        @Param({"5"})
+        public int arrayLength;
+        @Param({"0.1"})
+        public double hubFraction;
+        @Param({"4"})
+        public int workers;
+
+        Graph graph;
+        Neo4jService service;
+        NodeIdMapping nodeIdMapping;
+        private Path workspacePath;
+
+        @Setup(Level.Trial)
+        public void setUpTrial() throws IOException {
+            workspacePath = new SyntheticWorkspace(nodeLabels, nodesPerLabel, edgeLabels, edgesPerLabel,
+                                                   propertyWidth, arrayLength, hubFraction).getOrCreate();
+            graph = new Graph(workspacePath.resolve("sources/mapped.db"), true, true);
+        }
+
+        @Setup(Level.Iteration)
+        public void setUpIteration() throws Exception {
+            final CmdArgs commandLine = new CmdArgs();
+            new CommandLine(commandLine).parseArgs("--workers", String.valueOf(workers));
+            service = new Neo4jService(workspacePath.toString(), commandLine);
+            service.deleteOldDatabase();
+            service.startNeo4jService(getFreePort(), MemoryPlanner.Phase.CREATE);
+            nodeIdMapping = new NodeIdMapping(graph.getNumberOfNodes(), workspacePath.resolve("neo4j/node-ids"),
+                                              Runtime.getRuntime().maxMemory() / 4);
+        }
+
+        private static int getFreePort() throws IOException {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                return socket.getLocalPort();
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDownIteration() {
+            nodeIdMapping.close();
+            service.shutdown();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDownTrial() throws Exception {
+            graph.close();
+        }
+
+        void createNodes() throws InterruptedException, ExecutionException {
+            service.createNeo4jNodes(graph, Arrays.asList(graph.getNodeLabels()), nodeIdMapping);
+        }
+
+        void createEdges() throws InterruptedException, ExecutionException, IOException {
+            service.createNeo4jEdges(graph, Arrays.asList(graph.getEdgeLabels()), nodeIdMapping);
+        }
+    }
+
+    public static class NodeState extends ImportState {
+    }
+
+    public static class EdgeState extends ImportState {
+        @Setup(Level.Iteration)
+        public void createNodesBeforeIteration() throws Exception {
+            createNodes();
+        }
+    }
+
+    @Benchmark
+    public void createNeo4jNodes(final NodeState state) throws Exception {
+        state.createNodes();
+    }
+
+    @Benchmark
+    public void createNeo4jEdges(final EdgeState state) throws Exception {
+        state.createEdges();
+    }
+}
@@ -0,0 +1,85 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookups of Neo4j node ids during the edge import and the insertion during the node import. The
+ * lookups are run by as many threads as edge converters would use.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class NodeIdMappingBenchmark {
+    private static final int LOOKUP_BATCH = 1024;
+
+    @Param({"1000000", "20000000"})
+    public int size;
+    /**
+     * Spill threshold in MiB, {@code 0} memory-maps the tables.
+     */
+    @Param({"1024", "0"})
+    public int spillThresholdMiB;
+
+    private Path spillDirectory;
+    private NodeIdMapping mapping;
+    private long[] lookupIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        spillDirectory = Files.createTempDirectory("node-ids");
+        mapping = createMapping();
+        // BioDWH2 node ids are sequential, but not dense after merging, so leave gaps
+        for (int i = 0; i < size; i++)
+            mapping.put(i * 3L, i);
+        final Random random = new Random(42);
+        lookupIds = new long[1 << 20];
+        for (int i = 0; i < lookupIds.length; i++)
+            lookupIds[i] = random.nextInt(size) * 3L;
+    }
+
+    private NodeIdMapping createMapping() throws IOException {
+        return new NodeIdMapping(size, spillDirectory, spillThresholdMiB * 1024L * 1024L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mapping.close();
+    }
+
+    @State(Scope.Thread)
+    public static class LookupCursor {
+        int offset = new Random().nextInt(1 << 20);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(LOOKUP_BATCH)
+    public long get(final LookupCursor cursor) {
+        long sum = 0;
+        final int mask = lookupIds.length - 1;
+        for (int i = 0; i < LOOKUP_BATCH; i++)
+            sum += mapping.get(lookupIds[(cursor.offset + i) & mask]);
+        cursor.offset = (cursor.offset + LOOKUP_BATCH) & mask;
+        return sum;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long put() throws IOException {
+        try (NodeIdMapping target = createMapping()) {
+            for (int i = 0; i < size; i++)
+                target.put(i * 3L, i);
+            return target.size();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.model.graph.Graph;
+import de.unibi.agbi.biodwh2.core.model.graph.Node;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of node properties into Neo4j values, comparing the per-label conversion plans with the
+ * generic conversion of every value, as well as the conversion of list properties into arrays.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OperationsPerInvocation(PropertyConversionBenchmark.NODE_COUNT)
+@State(Scope.Benchmark)
+public class PropertyConversionBenchmark {
+    static final int NODE_COUNT = 10_000;
+
+    @Param({"10", "40"})
+    public int propertyWidth;
+    @Param({"0", "20"})
+    public int arrayLength;
+
+    private final List<Node> nodes = new ArrayList<>(NODE_COUNT);
+    private final List<Collection<?>> collections = new ArrayList<>();
+    private String[] keys;
+    private Object[] values;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final Path workspacePath = new SyntheticWorkspace(1, NODE_COUNT, 0, 0, propertyWidth, arrayLength,
+                                                          0).getOrCreate();
+        try (Graph graph = new Graph(workspacePath.resolve("sources/mapped.db"), true, true)) {
+            final Iterator<Node> iterator = GraphRepositories.iterateNodes(graph, SyntheticWorkspace.getNodeLabel(0));
+            while (iterator.hasNext())
+                nodes.add(iterator.next());
+        }
+        int maxKeys = 0;
+        for (final Node node : nodes) {
+            maxKeys = Math.max(maxKeys, node.keySet().size());
+            for (final String key : node.keySet())
+                if (node.getProperty(key) instanceof Collection<?> collection)
+                    collections.add(collection);
+        }
+        keys = new String[maxKeys];
+        values = new Object[maxKeys];
+    }
+
+    @Benchmark
+    public void conversionPlan(final Blackhole blackhole) {
+        // A new plan per invocation includes the planning of the first entity, as the import does per label
+        final PropertyConversionPlan plan = PropertyConversionPlan.forNodeLabel(SyntheticWorkspace.getNodeLabel(0));
+        for (final Node node : nodes) {
+            blackhole.consume(plan.convert(node, keys, values));
+            blackhole.consume(values);
+        }
+    }
+
+    @Benchmark
+    public void genericConversion(final Blackhole blackhole) {
+        for (final Node node : nodes)
+            for (final String key : node.keySet())
+                if (PropertyUtils.isNodePropertyImported(key))
+                    blackhole.consume(PropertyUtils.toNeo4jValue(node.getProperty(key)));
+    }
+
+    @Benchmark
+    public void convertCollectionToArray(final Blackhole blackhole) {
+        for (final Collection<?> collection : collections)
+            blackhole.consume(PropertyUtils.convertCollectionToArray(collection));
+    }
+}
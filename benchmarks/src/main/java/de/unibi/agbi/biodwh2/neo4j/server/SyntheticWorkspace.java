@@ -0,0 +1,164 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.model.graph.Edge;
+import de.unibi.agbi.biodwh2.core.model.graph.Graph;
+import de.unibi.agbi.biodwh2.core.model.graph.Node;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates BioDWH2 workspaces with a synthetic graph of a given shape. The graph only depends on the shape, as a
+ * fixed random seed is used, so benchmark runs on different machines and revisions import the same data. Generated
+ * workspaces are kept in the temporary directory and reused by later runs with the same shape.
+ */
+final class SyntheticWorkspace {
+    private static final long SEED = 0x5EED_B10D_3A4L;
+    private static final String[] WORDS = {
+            "kinase", "receptor", "protein", "binding", "domain", "factor", "alpha", "beta", "subunit", "channel",
+            "transporter", "ligase", "oxidase", "synthase", "homolog", "regulator", "family", "member", "type", "like"
+    };
+
+    private final int nodeLabels;
+    private final int nodesPerLabel;
+    private final int edgeLabels;
+    private final int edgesPerLabel;
+    private final int propertyWidth;
+    private final int arrayLength;
+    private final double hubFraction;
+
+    /**
+     * @param nodeLabels    Number of node labels
+     * @param nodesPerLabel Number of nodes per node label
+     * @param edgeLabels    Number of edge labels, each connecting two consecutive node labels
+     * @param edgesPerLabel Number of edges per edge label
+     * @param propertyWidth Number of scalar properties per node
+     * @param arrayLength   Length of the list properties per node, {@code 0} for none
+     * @param hubFraction   Share of edges ending at one of few hub nodes
+     */
+    SyntheticWorkspace(final int nodeLabels, final int nodesPerLabel, final int edgeLabels, final int edgesPerLabel,
+                       final int propertyWidth, final int arrayLength, final double hubFraction) {
+        this.nodeLabels = nodeLabels;
+        this.nodesPerLabel = nodesPerLabel;
+        this.edgeLabels = edgeLabels;
+        this.edgesPerLabel = edgesPerLabel;
+        this.propertyWidth = propertyWidth;
+        this.arrayLength = arrayLength;
+        this.hubFraction = hubFraction;
+    }
+
+    /**
+     * @return Workspace directory containing the graph in {@code sources/mapped.db}
+     */
+    Path getOrCreate() throws IOException {
+        final Path workspacePath = Paths.get(System.getProperty("java.io.tmpdir"), "biodwh2-neo4j-benchmarks",
+                                             getKey());
+        final Path graphPath = workspacePath.resolve("sources/mapped.db");
+        final Path completedPath = workspacePath.resolve("sources/completed");
+        if (Files.exists(completedPath))
+            return workspacePath;
+        FileUtils.deleteDirectory(workspacePath.toFile());
+        Files.createDirectories(graphPath.getParent());
+        try (Graph graph = new Graph(graphPath)) {
+            generate(graph);
+        }
+        Files.createFile(completedPath);
+        return workspacePath;
+    }
+
+    private String getKey() {
+        return String.format(Locale.ROOT, "n%dx%d-e%dx%d-p%d-a%d-h%.2f", nodeLabels, nodesPerLabel, edgeLabels,
+                             edgesPerLabel, propertyWidth, arrayLength, hubFraction);
+    }
+
+    static String getNodeLabel(final int index) {
+        return "Source" + (index % 3) + "_Node" + index;
+    }
+
+    static String getEdgeLabel(final int index) {
+        return "RELATES_" + index;
+    }
+
+    private void generate(final Graph graph) {
+        final Random random = new Random(SEED);
+        final List<long[]> nodeIds = new ArrayList<>(nodeLabels);
+        for (int labelIndex = 0; labelIndex < nodeLabels; labelIndex++) {
+            final String label = getNodeLabel(labelIndex);
+            final long[] ids = new long[nodesPerLabel];
+            for (int i = 0; i < nodesPerLabel; i++) {
+                final Node node = graph.addNode(label);
+                setNodeProperties(node, i, random);
+                graph.update(node);
+                ids[i] = node.getId();
+            }
+            nodeIds.add(ids);
+        }
+        final int hubCount = Math.max(1, nodesPerLabel / 1000);
+        for (int labelIndex = 0; labelIndex < edgeLabels && nodeLabels > 0; labelIndex++) {
+            final String label = getEdgeLabel(labelIndex);
+            final long[] fromIds = nodeIds.get(labelIndex % nodeLabels);
+            final long[] toIds = nodeIds.get((labelIndex + 1) % nodeLabels);
+            for (int i = 0; i < edgesPerLabel; i++) {
+                final long fromId = fromIds[random.nextInt(fromIds.length)];
+                final long toId = random.nextDouble() < hubFraction ? toIds[random.nextInt(hubCount)] :
+                                  toIds[random.nextInt(toIds.length)];
+                final Edge edge = graph.addEdge(fromId, toId, label);
+                edge.setProperty("score", random.nextDouble());
+                edge.setProperty("source", WORDS[random.nextInt(WORDS.length)]);
+                graph.update(edge);
+            }
+        }
+    }
+
+    private void setNodeProperties(final Node node, final int index, final Random random) {
+        node.setProperty("name", randomText(random, 3));
+        for (int i = 1; i < propertyWidth; i++) {
+            final String key = "property" + i;
+            switch (i % 5) {
+                case 0:
+                    node.setProperty(key, randomText(random, 2));
+                    break;
+                case 1:
+                    node.setProperty(key, random.nextInt());
+                    break;
+                case 2:
+                    node.setProperty(key, random.nextLong());
+                    break;
+                case 3:
+                    node.setProperty(key, random.nextDouble());
+                    break;
+                default:
+                    node.setProperty(key, random.nextBoolean());
+                    break;
+            }
+        }
+        if (arrayLength > 0) {
+            final List<String> synonyms = new ArrayList<>(arrayLength);
+            final List<Integer> values = new ArrayList<>(arrayLength);
+            for (int i = 0; i < arrayLength; i++) {
+                synonyms.add(randomText(random, 2));
+                // Sparse nulls exercise the null handling of the array conversion
+                values.add(index % 97 == i ? null : random.nextInt(1_000_000));
+            }
+            node.setProperty("synonyms", synonyms);
+            node.setProperty("values", values);
+        }
+    }
+
+    private static String randomText(final Random random, final int words) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0)
+                builder.append(' ');
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.toString();
+    }
+}
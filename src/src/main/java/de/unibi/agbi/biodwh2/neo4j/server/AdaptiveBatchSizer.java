@@ -0,0 +1,53 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+/**
+ * Sizes the transaction batches of a label from the transaction state memory and commit latency measured for the
+ * previous batches. The batch size grows until either the expected transaction state reaches the memory budget or
+ * the commit latency reaches its target, and shrinks again if batches become too expensive. One instance may be
+ * shared by all workers of a label.
+ */
+final class AdaptiveBatchSizer {
+    private static final int INITIAL_BATCH_SIZE = 1_000;
+    private static final long TARGET_COMMIT_NANOS = 500_000_000L;
+    private static final double MAX_GROWTH = 2.0;
+    private static final double MAX_SHRINK = 0.25;
+    private static final double SMOOTHING = 0.3;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long maxTransactionBytes;
+    private double bytesPerEntity;
+    private volatile int batchSize;
+
+    AdaptiveBatchSizer(final int minBatchSize, final int maxBatchSize, final long maxTransactionBytes) {
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.maxTransactionBytes = maxTransactionBytes;
+        batchSize = clamp(INITIAL_BATCH_SIZE);
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param count            Number of entities committed in the batch
+     * @param transactionBytes Transaction state memory of the batch right before the commit
+     * @param commitNanos      Duration of the commit
+     */
+    synchronized void record(final int count, final long transactionBytes, final long commitNanos) {
+        if (count <= 0)
+            return;
+        final double measuredBytesPerEntity = (double) Math.max(1, transactionBytes) / count;
+        bytesPerEntity = bytesPerEntity == 0 ? measuredBytesPerEntity :
+                         SMOOTHING * measuredBytesPerEntity + (1 - SMOOTHING) * bytesPerEntity;
+        final double latencyFactor = (double) TARGET_COMMIT_NANOS / Math.max(1, commitNanos);
+        final double latencySize = count * Math.max(MAX_SHRINK, Math.min(MAX_GROWTH, latencyFactor));
+        final double memorySize = maxTransactionBytes / bytesPerEntity;
+        batchSize = clamp((long) Math.min(latencySize, memorySize));
+    }
+
+    private int clamp(final long size) {
+        return (int) Math.max(minBatchSize, Math.min(maxBatchSize, size));
+    }
+}
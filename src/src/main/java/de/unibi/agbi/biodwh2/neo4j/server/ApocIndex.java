@@ -0,0 +1,140 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.UserAggregationFunction;
+import org.neo4j.procedure.UserFunction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Index of the APOC classes declaring procedures, functions and aggregation functions. The index is generated at
+ * build time by running {@link #main(String...)} with the runtime classpath and stored as the {@link #RESOURCE}
+ * resource, which spares the classpath scan and the trial registration of every APOC class at startup. Each line
+ * holds the {@link Kind} and the class name separated by a tab.
+ */
+final class ApocIndex {
+    private static final Logger LOGGER = LogManager.getLogger(ApocIndex.class);
+    static final String RESOURCE = "META-INF/biodwh2-neo4j-server/apoc-index.tsv";
+
+    enum Kind {
+        PROCEDURE(Procedure.class),
+        FUNCTION(UserFunction.class),
+        AGGREGATION_FUNCTION(UserAggregationFunction.class);
+
+        private final Class<? extends Annotation> annotation;
+
+        Kind(final Class<? extends Annotation> annotation) {
+            this.annotation = annotation;
+        }
+    }
+
+    private ApocIndex() {
+    }
+
+    /**
+     * Generates the index file.
+     *
+     * @param args Path of the index file to write
+     */
+    public static void main(final String... args) throws IOException {
+        final Path path = Paths.get(args[0]);
+        final List<String> lines = new ArrayList<>();
+        for (final Class<?> apocClass : Factory.getInstance().loadAllClasses("apoc."))
+            for (final Kind kind : getKinds(apocClass))
+                lines.add(kind + "\t" + apocClass.getName());
+        Collections.sort(lines);
+        Files.createDirectories(path.getParent());
+        Files.write(path, lines, StandardCharsets.UTF_8);
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Wrote {} APOC index entries to '{}'", lines.size(), path);
+    }
+
+    private static Set<Kind> getKinds(final Class<?> apocClass) {
+        final Set<Kind> kinds = EnumSet.noneOf(Kind.class);
+        try {
+            for (final Method method : apocClass.getDeclaredMethods())
+                for (final Kind kind : Kind.values())
+                    if (method.isAnnotationPresent(kind.annotation))
+                        kinds.add(kind);
+        } catch (Throwable e) {
+            if (LOGGER.isDebugEnabled())
+                LOGGER.debug("Skipping APOC class '{}'", apocClass.getName(), e);
+        }
+        return kinds;
+    }
+
+    /**
+     * Loads the classes of the index in parallel.
+     *
+     * @return Loaded classes by kind or {@code null} if no index is available
+     */
+    static Map<Kind, List<Class<?>>> load() {
+        final Map<String, Kind[]> entries = readEntries();
+        if (entries == null)
+            return null;
+        final ClassLoader classLoader = ApocIndex.class.getClassLoader();
+        final Map<String, Class<?>> classes = new HashMap<>();
+        entries.keySet().parallelStream().forEach((className) -> {
+            try {
+                final Class<?> apocClass = Class.forName(className, true, classLoader);
+                synchronized (classes) {
+                    classes.put(className, apocClass);
+                }
+            } catch (ClassNotFoundException | LinkageError e) {
+                if (LOGGER.isWarnEnabled())
+                    LOGGER.warn("Failed to load indexed APOC class '{}'", className, e);
+            }
+        });
+        final Map<Kind, List<Class<?>>> result = new EnumMap<>(Kind.class);
+        for (final Kind kind : Kind.values())
+            result.put(kind, new ArrayList<>());
+        for (final Map.Entry<String, Kind[]> entry : entries.entrySet()) {
+            final Class<?> apocClass = classes.get(entry.getKey());
+            if (apocClass != null)
+                for (final Kind kind : entry.getValue())
+                    result.get(kind).add(apocClass);
+        }
+        return result;
+    }
+
+    private static Map<String, Kind[]> readEntries() {
+        try (InputStream stream = ApocIndex.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (stream == null)
+                return null;
+            final Map<String, Kind[]> entries = new TreeMap<>();
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int separator = line.indexOf('\t');
+                if (separator < 0)
+                    continue;
+                final Kind kind = Kind.valueOf(line.substring(0, separator));
+                final Kind[] kinds = entries.get(line.substring(separator + 1));
+                entries.put(line.substring(separator + 1), kinds == null ? new Kind[]{kind} : append(kinds, kind));
+            }
+            return entries;
+        } catch (IOException | IllegalArgumentException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to read APOC index, falling back to classpath scan", e);
+            return null;
+        }
+    }
+
+    private static Kind[] append(final Kind[] kinds, final Kind kind) {
+        final Kind[] result = Arrays.copyOf(kinds, kinds.length + 1);
+        result[kinds.length] = kind;
+        return result;
+    }
+}
@@ -0,0 +1,250 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the static neo4j-browser assets from memory. Compressible assets are precompressed with brotli and gzip once
+ * after the extraction and stored next to the original files. Requests are answered with brotli or gzip if the client
+ * accepts them, preferring brotli. Brotli is skipped on platforms without a bundled native brotli library. Bundles
+ * with a content hash in their file name never change and are cached immutably by clients, all other assets are
+ * revalidated using their ETag, which differs per encoding.
+ */
+final class BrowserAssets {
+    private static final Logger LOGGER = LogManager.getLogger(BrowserAssets.class);
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final String BROTLI_EXTENSION = ".br";
+    private static final int BROTLI_QUALITY = 11;
+    private static final int MIN_COMPRESS_SIZE = 1024;
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = Set.of("html", "js", "mjs", "css", "json", "map",
+                                                                      "svg", "txt", "xml", "ico", "ttf", "eot");
+    private static final Map<String, String> CONTENT_TYPES = Map.ofEntries(
+            Map.entry("html", "text/html; charset=utf-8"), Map.entry("js", "text/javascript; charset=utf-8"),
+            Map.entry("mjs", "text/javascript; charset=utf-8"), Map.entry("css", "text/css; charset=utf-8"),
+            Map.entry("json", "application/json"), Map.entry("map", "application/json"),
+            Map.entry("svg", "image/svg+xml"), Map.entry("txt", "text/plain; charset=utf-8"),
+            Map.entry("xml", "application/xml"), Map.entry("png", "image/png"), Map.entry("jpg", "image/jpeg"),
+            Map.entry("gif", "image/gif"), Map.entry("ico", "image/x-icon"), Map.entry("woff", "font/woff"),
+            Map.entry("woff2", "font/woff2"), Map.entry("ttf", "font/ttf"),
+            Map.entry("eot", "application/vnd.ms-fontobject"), Map.entry("wasm", "application/wasm"));
+
+    /**
+     * Matches file names containing a content hash like {@code main.3f2a1b4c.chunk.js} or {@code app-3f2a1b4c5d.js}.
+     */
+    private static final Pattern HASHED_FILE_NAME = Pattern.compile(".*[.-][0-9a-f]{8,}[.-].*");
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE_CACHE_CONTROL = "no-cache";
+
+    private final Map<String, Asset> assets;
+
+    private BrowserAssets(final Map<String, Asset> assets) {
+        this.assets = assets;
+    }
+
+    /**
+     * Writes the gzip and brotli variants of all compressible assets next to the original files.
+     */
+    static void precompress(final Path distPath) throws IOException {
+        final boolean brotliAvailable = isBrotliAvailable();
+        for (final Path file : listAssetFiles(distPath)) {
+            if (!isCompressible(file) || Files.size(file) < MIN_COMPRESS_SIZE)
+                continue;
+            final byte[] content = Files.readAllBytes(file);
+            writeIfSmaller(file, GZIP_EXTENSION, content, gzip(content));
+            if (brotliAvailable)
+                writeIfSmaller(file, BROTLI_EXTENSION, content, brotli(content));
+        }
+    }
+
+    private static void writeIfSmaller(final Path file, final String extension, final byte[] content,
+                                       final byte[] compressed) throws IOException {
+        if (isWorthCompressing(content, compressed))
+            Files.write(file.resolveSibling(file.getFileName() + extension), compressed);
+    }
+
+    private static boolean isWorthCompressing(final byte[] content, final byte[] compressed) {
+        return compressed.length < content.length * 0.9;
+    }
+
+    private static boolean isBrotliAvailable() {
+        if (Brotli4jLoader.isAvailable())
+            return true;
+        if (LOGGER.isWarnEnabled())
+            LOGGER.warn("Brotli is not available on this platform, serving neo4j-browser assets with gzip only",
+                        Brotli4jLoader.getUnavailabilityCause());
+        return false;
+    }
+
+    private static List<Path> listAssetFiles(final Path distPath) throws IOException {
+        try (Stream<Path> files = Files.walk(distPath)) {
+            return files.filter(Files::isRegularFile).filter((file) -> {
+                final String name = file.getFileName().toString();
+                return !name.endsWith(GZIP_EXTENSION) && !name.endsWith(BROTLI_EXTENSION);
+            }).collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isCompressible(final Path file) {
+        return COMPRESSIBLE_EXTENSIONS.contains(getExtension(file.getFileName().toString()));
+    }
+
+    private static String getExtension(final String fileName) {
+        final int index = fileName.lastIndexOf('.');
+        return index < 0 ? "" : fileName.substring(index + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static byte[] gzip(final byte[] content) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream(content.length / 3);
+        try (OutputStream output = new GZIPOutputStream(result) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            output.write(content);
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] brotli(final byte[] content) throws IOException {
+        return Encoder.compress(content, new Encoder.Parameters().setQuality(BROTLI_QUALITY));
+    }
+
+    /**
+     * Loads all assets and their precompressed variants into memory. Compressible assets without a gzip variant on
+     * disk are compressed with gzip in memory, brotli is only served if it was precompressed.
+     */
+    static BrowserAssets load(final Path distPath) throws IOException {
+        final Map<String, Asset> assets = new HashMap<>();
+        long totalBytes = 0;
+        long transferBytes = 0;
+        for (final Path file : listAssetFiles(distPath)) {
+            final byte[] content = Files.readAllBytes(file);
+            byte[] gzip = readIfExists(file, GZIP_EXTENSION);
+            final byte[] brotli = readIfExists(file, BROTLI_EXTENSION);
+            if (gzip == null && content.length >= MIN_COMPRESS_SIZE && isCompressible(file)) {
+                gzip = gzip(content);
+                if (!isWorthCompressing(content, gzip))
+                    gzip = null;
+            }
+            final String name = file.getFileName().toString();
+            final String path = "/" + distPath.relativize(file).toString().replace('\\', '/');
+            final Asset asset = new Asset(content, gzip, brotli,
+                                          CONTENT_TYPES.getOrDefault(getExtension(name), "application/octet-stream"),
+                                          HASHED_FILE_NAME.matcher(name).matches());
+            assets.put(path, asset);
+            if (path.endsWith("/index.html"))
+                assets.put(path.substring(0, path.length() - "index.html".length()), asset);
+            totalBytes += content.length;
+            transferBytes += asset.getSmallestLength();
+        }
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Loaded {} neo4j-browser assets ({} KiB, {} KiB compressed)", assets.size(),
+                        totalBytes / 1024, transferBytes / 1024);
+        return new BrowserAssets(assets);
+    }
+
+    private static byte[] readIfExists(final Path file, final String extension) throws IOException {
+        final Path compressedFile = file.resolveSibling(file.getFileName() + extension);
+        if (!Files.exists(compressedFile) || Files.getLastModifiedTime(compressedFile).compareTo(
+                Files.getLastModifiedTime(file)) < 0)
+            return null;
+        return Files.readAllBytes(compressedFile);
+    }
+
+    /**
+     * @return {@code false} if there is no asset for the request path
+     */
+    boolean handle(final Context ctx) {
+        final Asset asset = assets.get(ctx.path());
+        if (asset == null)
+            return false;
+        final String acceptEncoding = ctx.header("Accept-Encoding");
+        final boolean brotli = asset.brotli != null && accepts(acceptEncoding, "br");
+        final boolean gzip = !brotli && asset.gzip != null && accepts(acceptEncoding, "gzip");
+        // Strong ETags identify the exact bytes, so each encoded variant has its own
+        final String etag = brotli ? asset.brotliEtag : gzip ? asset.gzipEtag : asset.etag;
+        ctx.header("Cache-Control", asset.immutable ? IMMUTABLE_CACHE_CONTROL : REVALIDATE_CACHE_CONTROL);
+        ctx.header("ETag", etag);
+        ctx.header("Vary", "Accept-Encoding");
+        final String ifNoneMatch = ctx.header("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(etag)) {
+            ctx.status(HttpStatus.NOT_MODIFIED);
+            return true;
+        }
+        ctx.contentType(asset.contentType);
+        if (brotli) {
+            ctx.header("Content-Encoding", "br");
+            ctx.result(asset.brotli);
+        } else if (gzip) {
+            ctx.header("Content-Encoding", "gzip");
+            ctx.result(asset.gzip);
+        } else
+            ctx.result(asset.content);
+        return true;
+    }
+
+    private static boolean accepts(final String acceptEncoding, final String encoding) {
+        if (acceptEncoding == null)
+            return false;
+        for (final String part : acceptEncoding.split(",")) {
+            final String[] parameters = part.trim().split(";");
+            if (parameters[0].trim().equalsIgnoreCase(encoding))
+                return parameters.length < 2 || !parameters[1].trim().matches("q=0(\\.0*)?");
+        }
+        return false;
+    }
+
+    private static final class Asset {
+        final byte[] content;
+        final byte[] gzip;
+        final byte[] brotli;
+        final String contentType;
+        final boolean immutable;
+        final String etag;
+        final String gzipEtag;
+        final String brotliEtag;
+
+        Asset(final byte[] content, final byte[] gzip, final byte[] brotli, final String contentType,
+              final boolean immutable) {
+            this.content = content;
+            this.gzip = gzip;
+            this.brotli = brotli;
+            this.contentType = contentType;
+            this.immutable = immutable;
+            final long hash = HashUtils.xxHash64(ByteBuffer.wrap(content), 0);
+            etag = String.format("\"%016x\"", hash);
+            gzipEtag = String.format("\"%016x-gz\"", hash);
+            brotliEtag = String.format("\"%016x-br\"", hash);
+        }
+
+        int getSmallestLength() {
+            int length = content.length;
+            if (gzip != null)
+                length = Math.min(length, gzip.length);
+            if (brotli != null)
+                length = Math.min(length, brotli.length);
+            return length;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.graphdb.QueryExecutionType;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs read-only Cypher queries posted as JSON {@code {"query": "...", "parameters": {...}}} and returns the columns
+ * and rows of the result as JSON. Queries are planned with {@code EXPLAIN} first and rejected unless they are
+ * read-only, and their transactions are never committed. Results are cached by query text and parameters.
+ * <p>
+ * Results are serialized while the rows are read, and queries are aborted with 413 once their result exceeds the
+ * maximum result size. Such results have to be streamed from the /export endpoint instead.
+ */
+final class CypherEndpoint {
+    private static final Logger LOGGER = LogManager.getLogger(CypherEndpoint.class);
+    private static final String CACHE_HEADER = "X-Cache";
+
+    private final GraphDatabaseService dbService;
+    private final QueryResultCache cache;
+    private final long maxResultBytes;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectMapper keyMapper = new ObjectMapper().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    /**
+     * @param cache          Result cache or {@code null} to disable caching
+     * @param maxResultBytes Maximum size of a serialized result or 0 for no limit
+     */
+    CypherEndpoint(final GraphDatabaseService dbService, final QueryResultCache cache, final long maxResultBytes) {
+        this.dbService = dbService;
+        this.cache = cache;
+        this.maxResultBytes = maxResultBytes;
+    }
+
+    public static final class QueryRequest {
+        public String query;
+        public Map<String, Object> parameters;
+    }
+
+    void handle(final Context ctx) throws IOException {
+        final QueryRequest request;
+        try {
+            request = mapper.readValue(ctx.body(), QueryRequest.class);
+        } catch (JsonProcessingException e) {
+            respondError(ctx, HttpStatus.BAD_REQUEST, "Invalid request body: " + e.getOriginalMessage());
+            return;
+        }
+        if (request.query == null || request.query.isBlank()) {
+            respondError(ctx, HttpStatus.BAD_REQUEST, "Missing query");
+            return;
+        }
+        final Map<String, Object> parameters = request.parameters != null ? request.parameters :
+                                               Collections.emptyMap();
+        final String key = request.query.trim() + "\n" + keyMapper.writeValueAsString(parameters);
+        byte[] result = cache != null ? cache.get(key) : null;
+        if (result != null) {
+            ctx.header(CACHE_HEADER, "HIT");
+        } else {
+            try {
+                result = execute(request.query, parameters);
+            } catch (IllegalArgumentException e) {
+                respondError(ctx, HttpStatus.FORBIDDEN, e.getMessage());
+                return;
+            } catch (QueryExecutionException e) {
+                respondError(ctx, HttpStatus.BAD_REQUEST, e.getMessage());
+                return;
+            }
+            if (result == null) {
+                respondError(ctx, HttpStatus.CONTENT_TOO_LARGE,
+                             "Result exceeds " + maxResultBytes / (1024 * 1024) + " MB, use the /export endpoint");
+                return;
+            }
+            if (cache != null)
+                cache.put(key, result);
+            ctx.header(CACHE_HEADER, "MISS");
+        }
+        ctx.contentType("application/json").result(result);
+    }
+
+    /**
+     * @return Serialized result or {@code null} if it exceeds the maximum result size
+     */
+    private byte[] execute(final String query, final Map<String, Object> parameters) throws IOException {
+        // The transaction is rolled back on close, nothing is ever committed
+        try (Transaction tx = dbService.beginTx()) {
+            ensureReadOnly(tx, query, parameters);
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (Result result = tx.execute(query, parameters);
+                 JsonGenerator generator = mapper.getFactory().createGenerator(output)) {
+                final List<String> columns = result.columns();
+                generator.writeStartObject();
+                generator.writeObjectField("columns", columns);
+                generator.writeArrayFieldStart("rows");
+                while (result.hasNext()) {
+                    final Map<String, Object> row = result.next();
+                    generator.writeStartArray();
+                    for (final String column : columns)
+                        generator.writeObject(GraphValues.toPlainValue(row.get(column)));
+                    generator.writeEndArray();
+                    if (maxResultBytes > 0 && output.size() > maxResultBytes)
+                        return null;
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Plans the query without executing it.
+     *
+     * @throws IllegalArgumentException if the query could modify the database
+     */
+    static void ensureReadOnly(final Transaction tx, final String query, final Map<String, Object> parameters) {
+        try (Result plan = tx.execute("EXPLAIN " + query, parameters)) {
+            if (plan.getQueryExecutionType().queryType() != QueryExecutionType.QueryType.READ_ONLY)
+                throw new IllegalArgumentException("Only read-only queries are allowed");
+        }
+    }
+
+    static void respondError(final Context ctx, final HttpStatus status, final String message) {
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Rejected request: {}", message);
+        ctx.status(status).json(Map.of("error", message));
+    }
+}
@@ -0,0 +1,108 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.model.graph.Edge;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Deadlock-free schedule for the concurrent creation of relationships. Every node is assigned to one of an even
+ * number of groups and every edge to the bucket of the unordered pair of its endpoint groups. The schedule consists
+ * of the rounds of a round-robin tournament between the groups followed by a round of all same-group buckets. No
+ * group appears twice within a round, so the buckets of a round never lock the same nodes and can be written in
+ * parallel.
+ */
+final class EdgePartitionSchedule {
+    private static final Logger LOGGER = LogManager.getLogger(EdgePartitionSchedule.class);
+
+    private final int groupCount;
+    private final int[][] rounds;
+
+    EdgePartitionSchedule(final int workerCount) {
+        groupCount = 2 * Math.max(1, workerCount);
+        rounds = new int[groupCount][];
+        final int circleSize = groupCount - 1;
+        for (int round = 0; round < circleSize; round++) {
+            rounds[round] = new int[groupCount / 2];
+            rounds[round][0] = getBucket(round, circleSize);
+            for (int i = 1; i < groupCount / 2; i++)
+                rounds[round][i] = getBucket((round + i) % circleSize, (round - i + circleSize) % circleSize);
+        }
+        rounds[circleSize] = new int[groupCount];
+        for (int i = 0; i < groupCount; i++)
+            rounds[circleSize][i] = getBucket(i, i);
+    }
+
+    private int getBucket(final int groupA, final int groupB) {
+        return Math.min(groupA, groupB) * groupCount + Math.max(groupA, groupB);
+    }
+
+    private int getGroup(final long neo4jId) {
+        return (int) Long.remainderUnsigned(neo4jId * 0x9E3779B97F4A7C15L, groupCount);
+    }
+
+    int[][] getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Distributes the edges of the converted batches into their buckets. Edges with unknown endpoints and edges
+     * existing already are dropped.
+     *
+     * @return Buckets indexed as referenced by {@link #getRounds()}, {@code null} for empty buckets
+     */
+    Bucket[] partition(final List<ImportBatch<Edge>> batches) {
+        final Bucket[] buckets = new Bucket[groupCount * groupCount];
+        long skipped = 0;
+        for (final ImportBatch<Edge> batch : batches) {
+            for (int i = 0; i < batch.size(); i++) {
+                final long fromId = batch.endpointIds[i * 2];
+                final long toId = batch.endpointIds[i * 2 + 1];
+                if (fromId == ImportBatch.EXISTING_EDGE)
+                    continue;
+                if (fromId == NodeIdMapping.MISSING || toId == NodeIdMapping.MISSING) {
+                    skipped++;
+                    continue;
+                }
+                final int bucketIndex = getBucket(getGroup(fromId), getGroup(toId));
+                if (buckets[bucketIndex] == null)
+                    buckets[bucketIndex] = new Bucket();
+                buckets[bucketIndex].add(batch, i);
+            }
+        }
+        if (skipped > 0 && LOGGER.isWarnEnabled())
+            LOGGER.warn("Skipped {} edges with unknown nodes", skipped);
+        return buckets;
+    }
+
+    /**
+     * References to edges of one bucket in insertion order.
+     */
+    static final class Bucket {
+        private final List<ImportBatch<Edge>> batches = new ArrayList<>();
+        private int[] indices = new int[64];
+
+        private void add(final ImportBatch<Edge> batch, final int index) {
+            final int size = batches.size();
+            if (size == indices.length)
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            indices[size] = index;
+            batches.add(batch);
+        }
+
+        int size() {
+            return batches.size();
+        }
+
+        ImportBatch<Edge> getBatch(final int position) {
+            return batches.get(position);
+        }
+
+        int getIndex(final int position) {
+            return indices[position];
+        }
+    }
+}
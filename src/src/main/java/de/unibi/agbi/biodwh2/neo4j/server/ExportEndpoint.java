@@ -0,0 +1,392 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.neo4j.graphdb.Entity;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams whole labels, relationship types or the results of read-only Cypher queries as JSON lines or GraphML.
+ * Records are written one by one while the result is iterated in a single read transaction, so memory usage does not
+ * depend on the size of the result. Writes block while the client does not keep up, which pauses the iteration until
+ * the client has read the buffered records.
+ * <p>
+ * GraphML exports of relationship types only contain the edges. GraphML exports of query results contain each node and
+ * relationship in the order they appear in the result, so queries should return each of them only once.
+ */
+final class ExportEndpoint {
+    private static final Logger LOGGER = LogManager.getLogger(ExportEndpoint.class);
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final String JSON_LINES_FORMAT = "jsonl";
+    private static final String GRAPHML_FORMAT = "graphml";
+    private static final String GRAPHML_NAMESPACE = "http://graphml.graphdrawing.org/xmlns";
+    private static final String PROPERTY_KEY_PREFIX = "p_";
+
+    private final GraphDatabaseService dbService;
+    private final ObjectMapper mapper = new ObjectMapper().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    ExportEndpoint(final GraphDatabaseService dbService) {
+        this.dbService = dbService;
+    }
+
+    void handleNodes(final Context ctx) {
+        final String format = getFormat(ctx);
+        if (format == null)
+            return;
+        final Label label = Label.label(ctx.pathParam("label"));
+        export(ctx, format, (tx, writer) -> {
+            try (ResourceIterator<Node> nodes = tx.findNodes(label)) {
+                while (nodes.hasNext())
+                    writer.writeNode(nodes.next());
+            }
+        });
+    }
+
+    void handleRelationships(final Context ctx) {
+        final String format = getFormat(ctx);
+        if (format == null)
+            return;
+        final RelationshipType type = RelationshipType.withName(ctx.pathParam("type"));
+        export(ctx, format, (tx, writer) -> {
+            try (ResourceIterator<Relationship> relationships = tx.findRelationships(type)) {
+                while (relationships.hasNext())
+                    writer.writeRelationship(relationships.next());
+            }
+        });
+    }
+
+    void handleQuery(final Context ctx) {
+        final String format = getFormat(ctx);
+        if (format == null)
+            return;
+        final CypherEndpoint.QueryRequest request;
+        try {
+            request = mapper.readValue(ctx.body(), CypherEndpoint.QueryRequest.class);
+        } catch (JsonProcessingException e) {
+            CypherEndpoint.respondError(ctx, HttpStatus.BAD_REQUEST, "Invalid request body: " + e.getOriginalMessage());
+            return;
+        }
+        if (request.query == null || request.query.isBlank()) {
+            CypherEndpoint.respondError(ctx, HttpStatus.BAD_REQUEST, "Missing query");
+            return;
+        }
+        final Map<String, Object> parameters = request.parameters != null ? request.parameters :
+                                               Collections.emptyMap();
+        try (Transaction tx = dbService.beginTx()) {
+            CypherEndpoint.ensureReadOnly(tx, request.query, parameters);
+        } catch (IllegalArgumentException e) {
+            CypherEndpoint.respondError(ctx, HttpStatus.FORBIDDEN, e.getMessage());
+            return;
+        } catch (QueryExecutionException e) {
+            CypherEndpoint.respondError(ctx, HttpStatus.BAD_REQUEST, e.getMessage());
+            return;
+        }
+        export(ctx, format, (tx, writer) -> {
+            try (Result result = tx.execute(request.query, parameters)) {
+                final List<String> columns = result.columns();
+                while (result.hasNext())
+                    writer.writeRow(columns, result.next());
+            }
+        });
+    }
+
+    private static String getFormat(final Context ctx) {
+        final String format = ctx.queryParam("format");
+        if (format == null)
+            return JSON_LINES_FORMAT;
+        if (JSON_LINES_FORMAT.equals(format) || GRAPHML_FORMAT.equals(format))
+            return format;
+        CypherEndpoint.respondError(ctx, HttpStatus.BAD_REQUEST, "Unsupported format '" + format + "'");
+        return null;
+    }
+
+    private void export(final Context ctx, final String format, final ExportTask task) {
+        final long startTime = System.currentTimeMillis();
+        ctx.contentType(GRAPHML_FORMAT.equals(format) ? "application/graphml+xml" : "application/x-ndjson");
+        final OutputStream output = new BufferedOutputStream(ctx.outputStream(), OUTPUT_BUFFER_SIZE);
+        RecordWriter writer = null;
+        // The transaction is rolled back on close, nothing is ever committed
+        try (Transaction tx = dbService.beginTx()) {
+            writer = GRAPHML_FORMAT.equals(format) ? new GraphMLWriter(output, tx) : new JsonLinesWriter(output);
+            task.run(tx, writer);
+            writer.finish();
+            output.flush();
+        } catch (IOException e) {
+            // Raised by the blocked write when the client closes the connection
+            if (LOGGER.isDebugEnabled())
+                LOGGER.debug("Export to {} aborted by the client", ctx.ip(), e);
+            return;
+        } catch (RuntimeException e) {
+            // Raised while iterating, for example by a query failing at runtime, when records may have been sent already
+            final long records = writer != null ? writer.getRecordCount() : 0;
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Export to {} failed after {} records", ctx.ip(), records, e);
+            abort(ctx, output, writer, e);
+            return;
+        }
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Exported {} records to {} in {}ms", writer.getRecordCount(), ctx.ip(),
+                         System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Ends a failed export with an error record instead of the regular end, so the client can tell the export apart
+     * from a complete one. If the writer could not be created, nothing has been sent and an error response is used.
+     */
+    private static void abort(final Context ctx, final OutputStream output, final RecordWriter writer,
+                              final RuntimeException e) {
+        final String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        if (writer == null) {
+            if (!ctx.res().isCommitted())
+                CypherEndpoint.respondError(ctx, HttpStatus.INTERNAL_SERVER_ERROR, message);
+            return;
+        }
+        try {
+            writer.abort(message);
+            output.flush();
+        } catch (IOException ignored) {
+            // The client closed the connection as well
+        }
+    }
+
+    @FunctionalInterface
+    private interface ExportTask {
+        void run(Transaction tx, RecordWriter writer) throws IOException;
+    }
+
+    private abstract static class RecordWriter {
+        private long recordCount;
+
+        abstract void writeNode(Node node) throws IOException;
+
+        abstract void writeRelationship(Relationship relationship) throws IOException;
+
+        abstract void writeRow(List<String> columns, Map<String, Object> row) throws IOException;
+
+        abstract void finish() throws IOException;
+
+        /**
+         * Ends the output after a failure with an error record.
+         */
+        abstract void abort(String message) throws IOException;
+
+        void countRecord() {
+            recordCount++;
+        }
+
+        long getRecordCount() {
+            return recordCount;
+        }
+    }
+
+    /**
+     * Writes one JSON object per line. Nodes and relationships are written in the format of the /cypher endpoint and
+     * query rows as objects from column names to values.
+     */
+    private final class JsonLinesWriter extends RecordWriter {
+        private final JsonGenerator generator;
+
+        JsonLinesWriter(final OutputStream output) throws IOException {
+            generator = mapper.getFactory().createGenerator(output);
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        void writeNode(final Node node) throws IOException {
+            writeLine(GraphValues.toPlainNode(node));
+        }
+
+        @Override
+        void writeRelationship(final Relationship relationship) throws IOException {
+            writeLine(GraphValues.toPlainRelationship(relationship));
+        }
+
+        @Override
+        void writeRow(final List<String> columns, final Map<String, Object> row) throws IOException {
+            final Map<String, Object> values = new LinkedHashMap<>();
+            for (final String column : columns)
+                values.put(column, GraphValues.toPlainValue(row.get(column)));
+            writeLine(values);
+        }
+
+        private void writeLine(final Object value) throws IOException {
+            generator.writeObject(value);
+            generator.writeRaw('\n');
+            countRecord();
+        }
+
+        @Override
+        void finish() throws IOException {
+            generator.close();
+        }
+
+        /**
+         * Writes a trailing {@code {"error": message}} record.
+         */
+        @Override
+        void abort(final String message) throws IOException {
+            generator.writeObject(Map.of("error", message));
+            generator.writeRaw('\n');
+            generator.close();
+        }
+    }
+
+    /**
+     * Writes a directed GraphML graph. Labels and relationship types are stored in the "labels" and "type" keys and
+     * all properties as strings, where arrays are encoded as JSON. The property keys are declared upfront from all
+     * property keys in the database, as GraphML requires the declarations before the graph.
+     */
+    private final class GraphMLWriter extends RecordWriter {
+        private final XMLStreamWriter writer;
+
+        GraphMLWriter(final OutputStream output, final Transaction tx) throws IOException {
+            try {
+                writer = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+                writer.writeStartDocument("UTF-8", "1.0");
+                writer.writeStartElement("graphml");
+                writer.writeDefaultNamespace(GRAPHML_NAMESPACE);
+                writeKey("labels", "node", "labels");
+                writeKey("type", "edge", "type");
+                for (final String propertyKey : tx.getAllPropertyKeys())
+                    writeKey(PROPERTY_KEY_PREFIX + propertyKey, "all", propertyKey);
+                writer.writeStartElement("graph");
+                writer.writeAttribute("id", "G");
+                writer.writeAttribute("edgedefault", "directed");
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private void writeKey(final String id, final String domain, final String name) throws XMLStreamException {
+            writer.writeEmptyElement("key");
+            writer.writeAttribute("id", id);
+            writer.writeAttribute("for", domain);
+            writer.writeAttribute("attr.name", name);
+            writer.writeAttribute("attr.type", "string");
+        }
+
+        @Override
+        void writeNode(final Node node) throws IOException {
+            try {
+                writer.writeStartElement("node");
+                writer.writeAttribute("id", node.getElementId());
+                final StringBuilder labels = new StringBuilder();
+                for (final Label label : node.getLabels())
+                    labels.append(':').append(label.name());
+                writeData("labels", labels.toString());
+                writeProperties(node);
+                writer.writeEndElement();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+            countRecord();
+        }
+
+        @Override
+        void writeRelationship(final Relationship relationship) throws IOException {
+            try {
+                writer.writeStartElement("edge");
+                writer.writeAttribute("id", relationship.getElementId());
+                writer.writeAttribute("source", relationship.getStartNode().getElementId());
+                writer.writeAttribute("target", relationship.getEndNode().getElementId());
+                writeData("type", relationship.getType().name());
+                writeProperties(relationship);
+                writer.writeEndElement();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+            countRecord();
+        }
+
+        private void writeProperties(final Entity entity) throws XMLStreamException, JsonProcessingException {
+            for (final Map.Entry<String, Object> property : entity.getAllProperties().entrySet()) {
+                final Object value = GraphValues.toPlainValue(property.getValue());
+                writeData(PROPERTY_KEY_PREFIX + property.getKey(),
+                          value instanceof String ? (String) value : mapper.writeValueAsString(value));
+            }
+        }
+
+        private void writeData(final String key, final String value) throws XMLStreamException {
+            writer.writeStartElement("data");
+            writer.writeAttribute("key", key);
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+        }
+
+        @Override
+        void writeRow(final List<String> columns, final Map<String, Object> row) throws IOException {
+            for (final String column : columns)
+                writeValue(row.get(column));
+        }
+
+        private void writeValue(final Object value) throws IOException {
+            if (value instanceof Node node)
+                writeNode(node);
+            else if (value instanceof Relationship relationship)
+                writeRelationship(relationship);
+            else if (value instanceof Path path) {
+                for (final Node node : path.nodes())
+                    writeNode(node);
+                for (final Relationship relationship : path.relationships())
+                    writeRelationship(relationship);
+            } else if (value instanceof Iterable<?> iterable) {
+                for (final Object element : iterable)
+                    writeValue(element);
+            } else if (value instanceof Map<?, ?> map) {
+                for (final Object element : map.values())
+                    writeValue(element);
+            }
+        }
+
+        @Override
+        void finish() throws IOException {
+            try {
+                writer.writeEndElement();
+                writer.writeEndElement();
+                writer.writeEndDocument();
+                writer.close();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Writes the error as comment and leaves the elements open, so the truncated document is not well-formed and
+         * fails to parse instead of being mistaken for a complete graph.
+         */
+        @Override
+        void abort(final String message) throws IOException {
+            try {
+                writer.writeComment(" Export failed: " + message.replace("--", "- -") + " ");
+                writer.flush();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
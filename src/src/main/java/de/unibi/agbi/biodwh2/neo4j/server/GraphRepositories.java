@@ -0,0 +1,60 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.io.mvstore.MVStoreCollection;
+import de.unibi.agbi.biodwh2.core.model.graph.Edge;
+import de.unibi.agbi.biodwh2.core.model.graph.Graph;
+import de.unibi.agbi.biodwh2.core.model.graph.Node;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+
+/**
+ * Provides fast iterators over the node and edge repositories of a {@link Graph}. If available, the unsafe
+ * iterators of the underlying MVStore collections are used, which skip the copy overhead of the public graph API.
+ */
+final class GraphRepositories {
+    private static Method getOrCreateNodeRepository;
+    private static Method getOrCreateEdgeRepository;
+
+    static {
+        try {
+            getOrCreateNodeRepository = Graph.class.getSuperclass().getDeclaredMethod("getOrCreateNodeRepository",
+                                                                                      String.class);
+            getOrCreateNodeRepository.setAccessible(true);
+            getOrCreateEdgeRepository = Graph.class.getSuperclass().getDeclaredMethod("getOrCreateEdgeRepository",
+                                                                                      String.class);
+            getOrCreateEdgeRepository.setAccessible(true);
+        } catch (NoSuchMethodException ignored) {
+            getOrCreateNodeRepository = null;
+            getOrCreateEdgeRepository = null;
+        }
+    }
+
+    private GraphRepositories() {
+    }
+
+    static Iterator<Node> iterateNodes(final Graph graph, final String label) {
+        if (getOrCreateNodeRepository != null) {
+            try {
+                //noinspection unchecked
+                final var collection = (MVStoreCollection<Node>) getOrCreateNodeRepository.invoke(graph, label);
+                return collection.unsafeIterator();
+            } catch (IllegalAccessException | InvocationTargetException ignored) {
+            }
+        }
+        return graph.getNodes(label).iterator();
+    }
+
+    static Iterator<Edge> iterateEdges(final Graph graph, final String label) {
+        if (getOrCreateEdgeRepository != null) {
+            try {
+                //noinspection unchecked
+                final var collection = (MVStoreCollection<Edge>) getOrCreateEdgeRepository.invoke(graph, label);
+                return collection.unsafeIterator();
+            } catch (IllegalAccessException | InvocationTargetException ignored) {
+            }
+        }
+        return graph.getEdges(label).iterator();
+    }
+}
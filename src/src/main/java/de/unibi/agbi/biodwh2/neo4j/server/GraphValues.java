@@ -0,0 +1,97 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.neo4j.graphdb.Entity;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.spatial.Point;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts Neo4j query result values into plain maps, lists and scalars, which can be serialized as JSON.
+ */
+final class GraphValues {
+    private GraphValues() {
+    }
+
+    static Object toPlainValue(final Object value) {
+        if (value instanceof Node node)
+            return toPlainNode(node);
+        if (value instanceof Relationship relationship)
+            return toPlainRelationship(relationship);
+        if (value instanceof Path path)
+            return toPlainPath(path);
+        if (value instanceof Point point)
+            return Map.of("srid", point.getCRS().getCode(), "coordinates", point.getCoordinate().getCoordinate());
+        if (value instanceof Map<?, ?> map) {
+            final Map<String, Object> result = new LinkedHashMap<>();
+            for (final Map.Entry<?, ?> entry : map.entrySet())
+                result.put(String.valueOf(entry.getKey()), toPlainValue(entry.getValue()));
+            return result;
+        }
+        if (value instanceof Iterable<?> iterable) {
+            final List<Object> result = new ArrayList<>();
+            for (final Object element : iterable)
+                result.add(toPlainValue(element));
+            return result;
+        }
+        if (value instanceof Object[] array) {
+            final List<Object> result = new ArrayList<>(array.length);
+            for (final Object element : array)
+                result.add(toPlainValue(element));
+            return result;
+        }
+        if (value != null && value.getClass().isArray())
+            return value;
+        if (value instanceof Number || value instanceof Boolean || value instanceof String || value == null)
+            return value;
+        // Temporal values and durations
+        return value.toString();
+    }
+
+    static Map<String, Object> toPlainNode(final Node node) {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", node.getElementId());
+        final List<String> labels = new ArrayList<>();
+        for (final Label label : node.getLabels())
+            labels.add(label.name());
+        result.put("labels", labels);
+        result.put("properties", toPlainProperties(node));
+        return result;
+    }
+
+    static Map<String, Object> toPlainRelationship(final Relationship relationship) {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", relationship.getElementId());
+        result.put("type", relationship.getType().name());
+        result.put("startNode", relationship.getStartNode().getElementId());
+        result.put("endNode", relationship.getEndNode().getElementId());
+        result.put("properties", toPlainProperties(relationship));
+        return result;
+    }
+
+    private static Map<String, Object> toPlainPath(final Path path) {
+        final List<Object> nodes = new ArrayList<>();
+        for (final Node node : path.nodes())
+            nodes.add(toPlainNode(node));
+        final List<Object> relationships = new ArrayList<>();
+        for (final Relationship relationship : path.relationships())
+            relationships.add(toPlainRelationship(relationship));
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("nodes", nodes);
+        result.put("relationships", relationships);
+        return result;
+    }
+
+    static Map<String, Object> toPlainProperties(final Entity entity) {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        for (final Map.Entry<String, Object> entry : entity.getAllProperties().entrySet())
+            result.put(entry.getKey(), toPlainValue(entry.getValue()));
+        return result;
+    }
+}
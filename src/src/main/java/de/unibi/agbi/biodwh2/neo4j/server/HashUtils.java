@@ -1,14 +1,33 @@
 package de.unibi.agbi.biodwh2.neo4j.server;
 
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.stream.IntStream;
 
 final class HashUtils {
+    private static final Logger LOGGER = LogManager.getLogger(HashUtils.class);
+    private static final int CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
     private HashUtils() {
     }
 
@@ -22,4 +41,119 @@ final class HashUtils {
         final BasicFileAttributes attributes = Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class);
         return DigestUtils.md5Hex(attributes.lastModifiedTime() + "__" + attributes.size());
     }
+
+    /**
+     * Content fingerprint of a file. The file is memory-mapped in chunks, which are hashed in parallel using xxHash64
+     * and combined into a tree hash. The result is cached together with the size, modification time and file key of
+     * the file, so an unchanged file is not read again.
+     *
+     * @param cacheFilePath File to cache the fingerprint in, {@code null} to disable the cache
+     */
+    static String getContentFingerprintFromFile(final String filePath, final Path cacheFilePath) throws IOException {
+        final Path path = Paths.get(filePath);
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final String cacheKey = path.toAbsolutePath() + "\t" + attributes.size() + "\t" +
+                                attributes.lastModifiedTime().toMillis() + "\t" + attributes.fileKey();
+        if (cacheFilePath != null && Files.exists(cacheFilePath)) {
+            final List<String> lines = Files.readAllLines(cacheFilePath, StandardCharsets.UTF_8);
+            if (lines.size() == 2 && lines.get(0).equals(cacheKey))
+                return lines.get(1);
+        }
+        final String fingerprint = computeContentFingerprint(path, attributes.size());
+        if (cacheFilePath != null) {
+            try {
+                Files.createDirectories(cacheFilePath.toAbsolutePath().getParent());
+                Files.writeString(cacheFilePath, cacheKey + "\n" + fingerprint, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                if (LOGGER.isWarnEnabled())
+                    LOGGER.warn("Failed to cache content fingerprint in '{}'", cacheFilePath, e);
+            }
+        }
+        return fingerprint;
+    }
+
+    private static String computeContentFingerprint(final Path path, final long size) throws IOException {
+        final int chunkCount = (int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        final ByteBuffer leafHashes = ByteBuffer.allocate((chunkCount + 1) * Long.BYTES).order(
+                ByteOrder.LITTLE_ENDIAN);
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long[] hashes = IntStream.range(0, chunkCount).parallel().mapToLong((chunk) -> {
+                final long offset = (long) chunk * CHUNK_SIZE;
+                try {
+                    return xxHash64(channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                                                Math.min(CHUNK_SIZE, size - offset)), chunk);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toArray();
+            for (final long hash : hashes)
+                leafHashes.putLong(hash);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        leafHashes.putLong(size);
+        leafHashes.flip();
+        return String.format("%016x", xxHash64(leafHashes, 0));
+    }
+
+    static long xxHash64(final ByteBuffer buffer, final long seed) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int position = buffer.position();
+        final int end = buffer.limit();
+        long hash;
+        if (end - position >= 32) {
+            long v1 = seed + PRIME_1 + PRIME_2;
+            long v2 = seed + PRIME_2;
+            long v3 = seed;
+            long v4 = seed - PRIME_1;
+            final int limit = end - 32;
+            do {
+                v1 = xxHashRound(v1, buffer.getLong(position));
+                v2 = xxHashRound(v2, buffer.getLong(position + 8));
+                v3 = xxHashRound(v3, buffer.getLong(position + 16));
+                v4 = xxHashRound(v4, buffer.getLong(position + 24));
+                position += 32;
+            } while (position <= limit);
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4,
+                                                                                                                18);
+            hash = xxHashMergeRound(hash, v1);
+            hash = xxHashMergeRound(hash, v2);
+            hash = xxHashMergeRound(hash, v3);
+            hash = xxHashMergeRound(hash, v4);
+        } else
+            hash = seed + PRIME_5;
+        hash += end - buffer.position();
+        while (position + 8 <= end) {
+            hash ^= xxHashRound(0, buffer.getLong(position));
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+            position += 8;
+        }
+        if (position + 4 <= end) {
+            hash ^= (buffer.getInt(position) & 0xFFFFFFFFL) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+            position += 4;
+        }
+        while (position < end) {
+            hash ^= (buffer.get(position) & 0xFF) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+            position++;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long xxHashRound(long accumulator, final long input) {
+        accumulator += input * PRIME_2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME_1;
+    }
+
+    private static long xxHashMergeRound(long accumulator, final long value) {
+        accumulator ^= xxHashRound(0, value);
+        return accumulator * PRIME_1 + PRIME_4;
+    }
 }
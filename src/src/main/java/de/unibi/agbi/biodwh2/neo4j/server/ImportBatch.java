@@ -0,0 +1,50 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.io.mvstore.MVStoreModel;
+
+import java.util.List;
+
+/**
+ * Batch of entities of a single label passed through the {@link ImportPipeline}. The reader stage fills the
+ * entities, the converter stage the prepared property keys and values as well as the resolved edge endpoints.
+ */
+final class ImportBatch<T extends MVStoreModel> implements ImportPipeline.Batch {
+    /**
+     * Endpoint id marking edges which exist already in the database when resuming an import.
+     */
+    static final long EXISTING_EDGE = -2;
+
+    final LabelBatchSource<T> source;
+    final long offset;
+    final AdaptiveBatchSizer batchSizer;
+    final List<T> entities;
+    final String[][] propertyKeys;
+    final Object[][] propertyValues;
+    long[] endpointIds;
+
+    /**
+     * @param offset Offset of the first entity in the label
+     */
+    ImportBatch(final LabelBatchSource<T> source, final long offset, final AdaptiveBatchSizer batchSizer,
+                final List<T> entities) {
+        this.source = source;
+        this.offset = offset;
+        this.batchSizer = batchSizer;
+        this.entities = entities;
+        propertyKeys = new String[entities.size()][];
+        propertyValues = new Object[entities.size()][];
+    }
+
+    void completed() {
+        source.batchCompleted(offset, entities.size());
+    }
+
+    String getLabel() {
+        return source.getLabel();
+    }
+
+    @Override
+    public int size() {
+        return entities.size();
+    }
+}
@@ -0,0 +1,196 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable progress of a database creation, so an interrupted creation can be continued with {@code --resume}. The
+ * checkpoint file starts with the key of the workspace graph and label filter it belongs to, followed by one line per
+ * started label in the format {@code <entityName>\t<label>\t<committedOffset>\t<completed>}.
+ * <p>
+ * The committed offset of a label is the number of entities from its start, which have all been committed. Batches
+ * are committed out of order by several workers, so entities after the committed offset may have been committed as
+ * well and have to be recognized by their id property when resuming. The checkpoint is saved periodically and after
+ * each import phase into a temporary file, which is synced and replaces the previous checkpoint atomically.
+ */
+final class ImportCheckpoint implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(ImportCheckpoint.class);
+    static final String FILE_NAME = "import-checkpoint.txt";
+    private static final long SAVE_INTERVAL_SECONDS = 10;
+
+    private final Path path;
+    private final String key;
+    private final boolean resumed;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final List<LabelBatchSource<?>> sources = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+
+    private ImportCheckpoint(final Path path, final String key, final boolean resumed) {
+        this.path = path;
+        this.key = key;
+        this.resumed = resumed;
+        scheduler = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            final Thread thread = new Thread(runnable, "import-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::save, SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts a new checkpoint, replacing any previous one.
+     */
+    static ImportCheckpoint create(final Path path, final String key) {
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(path, key, false);
+        checkpoint.save();
+        return checkpoint;
+    }
+
+    /**
+     * @return The stored checkpoint or {@code null} if there is none for the key
+     */
+    static ImportCheckpoint load(final Path path, final String key) {
+        final List<String> lines = readLines(path);
+        if (lines == null || lines.isEmpty() || !lines.get(0).equals(key))
+            return null;
+        final Map<String, Entry> entries = new LinkedHashMap<>();
+        try {
+            for (int i = 1; i < lines.size(); i++) {
+                final String[] parts = StringUtils.split(lines.get(i), '\t');
+                if (parts.length == 4)
+                    entries.put(getEntryKey(parts[0], parts[1]), new Entry(Long.parseLong(parts[2]),
+                                                                           Boolean.parseBoolean(parts[3])));
+            }
+        } catch (NumberFormatException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Ignoring invalid import checkpoint '{}'", path, e);
+            return null;
+        }
+        final ImportCheckpoint checkpoint = new ImportCheckpoint(path, key, true);
+        checkpoint.entries.putAll(entries);
+        return checkpoint;
+    }
+
+    /**
+     * @return {@code true} if a stored checkpoint for the key exists
+     */
+    static boolean exists(final Path path, final String key) {
+        final List<String> lines = readLines(path);
+        return lines != null && !lines.isEmpty() && lines.get(0).equals(key);
+    }
+
+    private static List<String> readLines(final Path path) {
+        if (!Files.exists(path))
+            return null;
+        try {
+            return Files.readAllLines(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to read import checkpoint '{}'", path, e);
+            return null;
+        }
+    }
+
+    static void delete(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to delete import checkpoint '{}'", path, e);
+        }
+    }
+
+    private static String getEntryKey(final String entityName, final String label) {
+        return entityName + "\t" + label;
+    }
+
+    /**
+     * @return {@code true} if the checkpoint was loaded to resume an interrupted import
+     */
+    boolean isResumed() {
+        return resumed;
+    }
+
+    synchronized boolean isCompleted(final String entityName, final String label) {
+        final Entry entry = entries.get(getEntryKey(entityName, label));
+        return entry != null && entry.completed;
+    }
+
+    synchronized long getCommittedOffset(final String entityName, final String label) {
+        final Entry entry = entries.get(getEntryKey(entityName, label));
+        return entry != null ? entry.committedOffset : 0;
+    }
+
+    /**
+     * Tracks the progress of the source from now on.
+     */
+    void addSource(final LabelBatchSource<?> source) {
+        sources.add(source);
+    }
+
+    synchronized void save() {
+        for (final LabelBatchSource<?> source : sources) {
+            final long committedOffset = source.getCommittedOffset();
+            if (committedOffset > 0 || source.getFinishTime() != 0)
+                entries.put(getEntryKey(source.getEntityName(), source.getLabel()),
+                            new Entry(committedOffset, source.getFinishTime() != 0));
+        }
+        final StringBuilder content = new StringBuilder(key);
+        for (final Map.Entry<String, Entry> entry : entries.entrySet())
+            content.append('\n').append(entry.getKey()).append('\t').append(entry.getValue().committedOffset).append(
+                    '\t').append(entry.getValue().completed);
+        final Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+                                                        StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                channel.force(true);
+            }
+            try {
+                Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to save import checkpoint '{}'", path, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        save();
+    }
+
+    private static final class Entry {
+        final long committedOffset;
+        final boolean completed;
+
+        Entry(final long committedOffset, final boolean completed) {
+            this.committedOffset = committedOffset;
+            this.completed = completed;
+        }
+    }
+}
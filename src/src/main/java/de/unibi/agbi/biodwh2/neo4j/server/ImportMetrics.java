@@ -0,0 +1,348 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Instrumentation of a database import. Collects the progress and rates of the labels from their
+ * {@link LabelBatchSource}s, the stage times of the {@link ImportPipeline}s, a histogram of the commit latencies and
+ * the garbage collection pauses. The live values are available via JMX while the import runs and an estimate of the
+ * remaining time is logged periodically. Once finished, a JSON report is written.
+ */
+final class ImportMetrics implements ImportMetricsMXBean {
+    private static final Logger LOGGER = LogManager.getLogger(ImportMetrics.class);
+    private static final String OBJECT_NAME = "de.unibi.agbi.biodwh2.neo4j.server:type=ImportMetrics";
+    private static final long REPORT_INTERVAL_SECONDS = 30;
+    private static final int HISTOGRAM_BUCKETS = 40;
+    private static final ObjectWriter REPORT_WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
+
+    private final String operation;
+    private final int workerCount;
+    private final long expectedNodes;
+    private final long expectedEdges;
+    private final long startTime = System.currentTimeMillis();
+    private final long startGcCount;
+    private final long startGcMillis;
+    private final List<LabelBatchSource<?>> sources = new CopyOnWriteArrayList<>();
+    private final List<ImportPipeline<?, ?>> pipelines = new CopyOnWriteArrayList<>();
+    /**
+     * Commit counts by the binary logarithm of the commit latency in microseconds.
+     */
+    private final AtomicLongArray commitHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    private final ScheduledExecutorService reporter;
+    private volatile String phase = "starting";
+    private volatile long finishTime;
+
+    private ImportMetrics(final String operation, final int workerCount, final long expectedNodes,
+                          final long expectedEdges) {
+        this.operation = operation;
+        this.workerCount = workerCount;
+        this.expectedNodes = expectedNodes;
+        this.expectedEdges = expectedEdges;
+        startGcCount = getGcCount();
+        startGcMillis = getGcMillis();
+        reporter = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            final Thread thread = new Thread(runnable, "import-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts collecting the metrics of an import and registers them with JMX.
+     */
+    static ImportMetrics start(final String operation, final int workerCount, final long expectedNodes,
+                               final long expectedEdges) {
+        final ImportMetrics metrics = new ImportMetrics(operation, workerCount, expectedNodes, expectedEdges);
+        metrics.reporter.scheduleAtFixedRate(metrics::logProgress, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS,
+                                             TimeUnit.SECONDS);
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(metrics, name);
+        } catch (Exception e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to register import metrics with JMX", e);
+        }
+        return metrics;
+    }
+
+    void setPhase(final String phase) {
+        this.phase = phase;
+    }
+
+    void addSource(final LabelBatchSource<?> source) {
+        sources.add(source);
+    }
+
+    void addPipeline(final ImportPipeline<?, ?> pipeline) {
+        pipelines.add(pipeline);
+    }
+
+    void recordCommit(final long commitNanos) {
+        final long micros = Math.max(1, commitNanos / 1000);
+        final int bucket = Math.min(HISTOGRAM_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+        commitHistogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * Stops the collection, writes the JSON report and unregisters the metrics from JMX.
+     */
+    void finish(final Path reportFilePath) {
+        finishTime = System.currentTimeMillis();
+        phase = "finished";
+        reporter.shutdownNow();
+        logProgress();
+        try {
+            REPORT_WRITER.writeValue(reportFilePath.toFile(), toReport());
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info("Wrote import report to '{}'", reportFilePath);
+        } catch (IOException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to write import report '{}'", reportFilePath, e);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (Exception ignored) {
+        }
+    }
+
+    private void logProgress() {
+        if (!LOGGER.isInfoEnabled())
+            return;
+        final long processed = getProcessedNodes() + getProcessedEdges();
+        final long expected = expectedNodes + expectedEdges;
+        final long eta = getEtaSeconds();
+        LOGGER.info("Import {}: {}/{} entities ({}%), {}/s, commit p50 {}ms p99 {}ms, GC {}ms, ETA {}", phase,
+                    processed, expected, expected == 0 ? 100 : processed * 100 / expected,
+                    (long) getEntitiesPerSecond(), String.format("%.1f", getCommitLatencyP50Millis()),
+                    String.format("%.1f", getCommitLatencyP99Millis()), getGcPauseMillis(),
+                    eta < 0 ? "unknown" : formatDuration(eta));
+    }
+
+    private static String formatDuration(final long seconds) {
+        return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+    private long getEndTime() {
+        return finishTime != 0 ? finishTime : System.currentTimeMillis();
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String getPhase() {
+        return phase;
+    }
+
+    @Override
+    public long getElapsedSeconds() {
+        return (getEndTime() - startTime) / 1000;
+    }
+
+    @Override
+    public long getExpectedNodes() {
+        return expectedNodes;
+    }
+
+    @Override
+    public long getProcessedNodes() {
+        return getProcessed("nodes");
+    }
+
+    @Override
+    public long getExpectedEdges() {
+        return expectedEdges;
+    }
+
+    @Override
+    public long getProcessedEdges() {
+        return getProcessed("edges");
+    }
+
+    private long getProcessed(final String entityName) {
+        long processed = 0;
+        for (final LabelBatchSource<?> source : sources)
+            if (source.getEntityName().equals(entityName))
+                processed += source.getProcessed();
+        return processed;
+    }
+
+    @Override
+    public double getEntitiesPerSecond() {
+        return (getProcessedNodes() + getProcessedEdges()) * 1000.0 / Math.max(1, getEndTime() - startTime);
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        final double rate = getEntitiesPerSecond();
+        final long remaining = expectedNodes + expectedEdges - getProcessedNodes() - getProcessedEdges();
+        if (remaining <= 0)
+            return 0;
+        return rate <= 0 ? -1 : (long) (remaining / rate);
+    }
+
+    @Override
+    public long getCommitCount() {
+        long count = 0;
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++)
+            count += commitHistogram.get(i);
+        return count;
+    }
+
+    @Override
+    public double getCommitLatencyP50Millis() {
+        return getCommitLatencyPercentileMillis(0.5);
+    }
+
+    @Override
+    public double getCommitLatencyP99Millis() {
+        return getCommitLatencyPercentileMillis(0.99);
+    }
+
+    /**
+     * @return Upper bound of the histogram bucket containing the percentile
+     */
+    private double getCommitLatencyPercentileMillis(final double percentile) {
+        final long count = getCommitCount();
+        if (count == 0)
+            return 0;
+        final long rank = (long) Math.ceil(count * percentile);
+        long cumulative = 0;
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            cumulative += commitHistogram.get(i);
+            if (cumulative >= rank)
+                return getBucketUpperMillis(i);
+        }
+        return getBucketUpperMillis(HISTOGRAM_BUCKETS - 1);
+    }
+
+    private static double getBucketUpperMillis(final int bucket) {
+        return (1L << (bucket + 1)) / 1000.0;
+    }
+
+    @Override
+    public long getGcPauseMillis() {
+        return getGcMillis() - startGcMillis;
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, bean.getCollectionCount());
+        return count;
+    }
+
+    private static long getGcMillis() {
+        long millis = 0;
+        for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, bean.getCollectionTime());
+        return millis;
+    }
+
+    @Override
+    public Map<String, Long> getLabelProgress() {
+        final Map<String, Long> progress = new TreeMap<>();
+        for (final LabelBatchSource<?> source : sources)
+            progress.put(source.getEntityName() + ":" + source.getLabel(), source.getProcessed());
+        return progress;
+    }
+
+    @Override
+    public Map<String, Double> getStageBusyPercent() {
+        final Map<String, Double> result = new TreeMap<>();
+        for (final ImportPipeline<?, ?> pipeline : pipelines)
+            for (final ImportPipeline.StageCounter counter : pipeline.getStageCounters()) {
+                final double total = counter.getBusyNanos() + counter.getBlockedNanos();
+                result.put(pipeline.getName() + ":" + counter.getName(),
+                           total == 0 ? 0 : counter.getBusyNanos() * 100 / total);
+            }
+        return result;
+    }
+
+    private Map<String, Object> toReport() {
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("operation", operation);
+        report.put("startTime", Instant.ofEpochMilli(startTime).toString());
+        report.put("durationSeconds", (getEndTime() - startTime) / 1000.0);
+        report.put("workers", workerCount);
+        report.put("nodes", orderedMap("expected", expectedNodes, "processed", getProcessedNodes()));
+        report.put("edges", orderedMap("expected", expectedEdges, "processed", getProcessedEdges()));
+        report.put("entitiesPerSecond", (long) getEntitiesPerSecond());
+        final List<Map<String, Object>> labels = new ArrayList<>();
+        for (final LabelBatchSource<?> source : sources) {
+            final double seconds = source.getStartTime() == 0 ? 0 : ((source.getFinishTime() != 0 ?
+                                                                      source.getFinishTime() : getEndTime()) -
+                                                                     source.getStartTime()) / 1000.0;
+            final Map<String, Object> label = new LinkedHashMap<>();
+            label.put("type", source.getEntityName());
+            label.put("label", source.getLabel());
+            label.put("total", source.getTotal());
+            label.put("processed", source.getProcessed());
+            label.put("seconds", seconds);
+            label.put("perSecond", seconds == 0 ? 0 : (long) (source.getProcessed() / seconds));
+            labels.add(label);
+        }
+        report.put("labels", labels);
+        final List<Map<String, Object>> stages = new ArrayList<>();
+        for (final ImportPipeline<?, ?> pipeline : pipelines)
+            for (final ImportPipeline.StageCounter counter : pipeline.getStageCounters()) {
+                final Map<String, Object> stage = new LinkedHashMap<>();
+                stage.put("pipeline", pipeline.getName());
+                stage.put("stage", counter.getName());
+                stage.put("items", counter.getItems());
+                stage.put("busySeconds", counter.getBusyNanos() / 1e9);
+                stage.put("blockedSeconds", counter.getBlockedNanos() / 1e9);
+                stages.add(stage);
+            }
+        report.put("stages", stages);
+        final List<Map<String, Object>> histogram = new ArrayList<>();
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            final long count = commitHistogram.get(i);
+            if (count > 0)
+                histogram.add(orderedMap("upperMillis", getBucketUpperMillis(i), "count", count));
+        }
+        final Map<String, Object> commits = new LinkedHashMap<>();
+        commits.put("count", getCommitCount());
+        commits.put("p50Millis", getCommitLatencyP50Millis());
+        commits.put("p90Millis", getCommitLatencyPercentileMillis(0.9));
+        commits.put("p99Millis", getCommitLatencyP99Millis());
+        commits.put("histogram", histogram);
+        report.put("commits", commits);
+        report.put("gc", orderedMap("collections", getGcCount() - startGcCount, "pauseMillis", getGcPauseMillis()));
+        return report;
+    }
+
+    private static Map<String, Object> orderedMap(final String firstKey, final Object firstValue,
+                                                  final String secondKey, final Object secondValue) {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put(firstKey, firstValue);
+        map.put(secondKey, secondValue);
+        return map;
+    }
+}
@@ -0,0 +1,47 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import java.util.Map;
+
+/**
+ * Live values of a running import, registered as {@code de.unibi.agbi.biodwh2.neo4j.server:type=ImportMetrics}.
+ */
+public interface ImportMetricsMXBean {
+    String getOperation();
+
+    String getPhase();
+
+    long getElapsedSeconds();
+
+    long getExpectedNodes();
+
+    long getProcessedNodes();
+
+    long getExpectedEdges();
+
+    long getProcessedEdges();
+
+    double getEntitiesPerSecond();
+
+    /**
+     * @return Estimated remaining seconds or {@code -1} if unknown
+     */
+    long getEtaSeconds();
+
+    long getCommitCount();
+
+    double getCommitLatencyP50Millis();
+
+    double getCommitLatencyP99Millis();
+
+    long getGcPauseMillis();
+
+    /**
+     * @return Processed entities by {@code nodes:<label>} or {@code edges:<label>}
+     */
+    Map<String, Long> getLabelProgress();
+
+    /**
+     * @return Share of busy time in percent by {@code <pipeline>:<stage>}
+     */
+    Map<String, Double> getStageBusyPercent();
+}
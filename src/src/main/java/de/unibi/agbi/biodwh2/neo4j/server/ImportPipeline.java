@@ -0,0 +1,218 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Staged import pipeline. Reader threads pull batches from the MVStore repositories, converter threads prepare the
+ * properties and writer threads write to Neo4j. The stages are linked by bounded queues, so fast stages block until
+ * the slower ones catch up. Every stage counts its processed entities as well as the time spent working and waiting
+ * on its queues, which identifies the bottleneck stage in the periodic throughput log.
+ */
+final class ImportPipeline<R extends ImportPipeline.Batch, C extends ImportPipeline.Batch> {
+    private static final Logger LOGGER = LogManager.getLogger(ImportPipeline.class);
+    private static final long REPORT_INTERVAL_SECONDS = 30;
+    private static final Object END_OF_STREAM = new Object();
+
+    interface Batch {
+        int size();
+    }
+
+    interface Reader<R> {
+        /**
+         * Reads all batches of this reader and hands them to the sink. Returns once the reader is exhausted.
+         */
+        void read(BatchSink<R> sink) throws Exception;
+    }
+
+    interface BatchSink<R> {
+        void accept(R batch) throws InterruptedException;
+    }
+
+    interface Converter<R, C> {
+        C convert(R batch) throws Exception;
+    }
+
+    interface Writer<C> {
+        void write(C batch) throws Exception;
+
+        /**
+         * Called once by each writer thread after the last batch was written.
+         */
+        default void finish() throws Exception {
+        }
+    }
+
+    private final String name;
+    private final BlockingQueue<Object> readQueue;
+    private final BlockingQueue<Object> convertedQueue;
+    private final StageCounter readCounter = new StageCounter("read");
+    private final StageCounter convertCounter = new StageCounter("convert");
+    private final StageCounter writeCounter = new StageCounter("write");
+
+    ImportPipeline(final String name, final int queueCapacity) {
+        this.name = name;
+        readQueue = new ArrayBlockingQueue<>(queueCapacity);
+        convertedQueue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    StageCounter[] getStageCounters() {
+        return new StageCounter[]{readCounter, convertCounter, writeCounter};
+    }
+
+    void run(final List<Reader<R>> readers, final int converterCount, final Converter<R, C> converter,
+             final int writerCount, final Writer<C> writer) throws InterruptedException, ExecutionException {
+        final int threadCount = readers.size() + converterCount + writerCount;
+        final AtomicInteger threadCounter = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount, (runnable) -> {
+            final Thread thread = new Thread(runnable, name + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            final Thread thread = new Thread(runnable, name + "-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long startTime = System.nanoTime();
+        reporter.scheduleAtFixedRate(() -> logThroughput(startTime), REPORT_INTERVAL_SECONDS,
+                                     REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        final ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        final AtomicInteger remainingReaders = new AtomicInteger(readers.size());
+        final AtomicInteger remainingConverters = new AtomicInteger(converterCount);
+        try {
+            for (final Reader<R> reader : readers)
+                completionService.submit(() -> {
+                    runReader(reader);
+                    if (remainingReaders.decrementAndGet() == 0)
+                        for (int i = 0; i < converterCount; i++)
+                            readQueue.put(END_OF_STREAM);
+                    return null;
+                });
+            for (int i = 0; i < converterCount; i++)
+                completionService.submit(() -> {
+                    runConverter(converter);
+                    if (remainingConverters.decrementAndGet() == 0)
+                        for (int j = 0; j < writerCount; j++)
+                            convertedQueue.put(END_OF_STREAM);
+                    return null;
+                });
+            for (int i = 0; i < writerCount; i++)
+                completionService.submit(() -> {
+                    runWriter(writer);
+                    return null;
+                });
+            for (int i = 0; i < threadCount; i++)
+                completionService.take().get();
+        } finally {
+            executor.shutdownNow();
+            reporter.shutdownNow();
+        }
+        logThroughput(startTime);
+    }
+
+    private void runReader(final Reader<R> reader) throws Exception {
+        final long[] lastTime = {System.nanoTime()};
+        reader.read((batch) -> {
+            final long putStart = System.nanoTime();
+            readCounter.busyNanos.add(putStart - lastTime[0]);
+            readQueue.put(batch);
+            lastTime[0] = System.nanoTime();
+            readCounter.blockedNanos.add(lastTime[0] - putStart);
+            readCounter.items.add(batch.size());
+        });
+        readCounter.busyNanos.add(System.nanoTime() - lastTime[0]);
+    }
+
+    private void runConverter(final Converter<R, C> converter) throws Exception {
+        while (true) {
+            long time = System.nanoTime();
+            final Object item = readQueue.take();
+            convertCounter.blockedNanos.add(System.nanoTime() - time);
+            if (item == END_OF_STREAM)
+                return;
+            time = System.nanoTime();
+            //noinspection unchecked
+            final C converted = converter.convert((R) item);
+            convertCounter.busyNanos.add(System.nanoTime() - time);
+            convertCounter.items.add(converted.size());
+            time = System.nanoTime();
+            convertedQueue.put(converted);
+            convertCounter.blockedNanos.add(System.nanoTime() - time);
+        }
+    }
+
+    private void runWriter(final Writer<C> writer) throws Exception {
+        while (true) {
+            long time = System.nanoTime();
+            final Object item = convertedQueue.take();
+            writeCounter.blockedNanos.add(System.nanoTime() - time);
+            time = System.nanoTime();
+            if (item == END_OF_STREAM) {
+                writer.finish();
+                writeCounter.busyNanos.add(System.nanoTime() - time);
+                return;
+            }
+            //noinspection unchecked
+            final C batch = (C) item;
+            writer.write(batch);
+            writeCounter.busyNanos.add(System.nanoTime() - time);
+            writeCounter.items.add(batch.size());
+        }
+    }
+
+    private void logThroughput(final long startTime) {
+        if (!LOGGER.isInfoEnabled())
+            return;
+        final double seconds = Math.max(1, System.nanoTime() - startTime) / 1e9;
+        final List<String> stages = new ArrayList<>(3);
+        for (final StageCounter counter : getStageCounters())
+            stages.add(counter.format(seconds));
+        LOGGER.info("{} pipeline throughput: {} (queued {}/{})", name, String.join(", ", stages), readQueue.size(),
+                    convertedQueue.size());
+    }
+
+    static final class StageCounter {
+        private final String name;
+        private final LongAdder items = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder blockedNanos = new LongAdder();
+
+        StageCounter(final String name) {
+            this.name = name;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getItems() {
+            return items.sum();
+        }
+
+        long getBusyNanos() {
+            return busyNanos.sum();
+        }
+
+        long getBlockedNanos() {
+            return blockedNanos.sum();
+        }
+
+        String format(final double seconds) {
+            final double busy = busyNanos.sum();
+            final double total = busy + blockedNanos.sum();
+            return String.format("%s %d/s (busy %.0f%%)", name, (long) (items.sum() / seconds),
+                                 total == 0 ? 0 : busy * 100 / total);
+        }
+    }
+}
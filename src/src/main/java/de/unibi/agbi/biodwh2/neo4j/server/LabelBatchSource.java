@@ -0,0 +1,154 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads the entities of a single label in batches and tracks the import progress of the label. Each non-empty batch
+ * handed out by {@link #nextBatch(int)} has to be reported back exactly once via {@link #batchCompleted(long, int)},
+ * so the label is reported as finished once it has been read completely and all of its batches have been written.
+ * <p>
+ * Batches are written out of order by several workers, so the source also tracks the committed offset, up to which
+ * all entities of the label have been written without gaps.
+ */
+final class LabelBatchSource<T> {
+    private static final Logger LOGGER = LogManager.getLogger(LabelBatchSource.class);
+    private static final long PROGRESS_INTERVAL = 100_000;
+
+    private final String entityName;
+    private final String label;
+    private final Iterator<T> iterator;
+    private final long total;
+    private final PropertyConversionPlan conversionPlan;
+    private final long startOffset;
+    private final AtomicLong processed = new AtomicLong();
+    private final TreeMap<Long, Integer> completedBatches = new TreeMap<>();
+    private long committedOffset;
+    private volatile long startTime;
+    private volatile long finishTime;
+    private int pendingBatches;
+    private boolean exhausted;
+
+    LabelBatchSource(final String entityName, final String label, final Iterator<T> iterator, final long total,
+                     final PropertyConversionPlan conversionPlan) {
+        this(entityName, label, iterator, total, conversionPlan, 0);
+    }
+
+    /**
+     * @param startOffset Number of entities of the label already written by a previous import, which the iterator
+     *                    has skipped already
+     */
+    LabelBatchSource(final String entityName, final String label, final Iterator<T> iterator, final long total,
+                     final PropertyConversionPlan conversionPlan, final long startOffset) {
+        this.entityName = entityName;
+        this.label = label;
+        this.iterator = iterator;
+        this.total = total;
+        this.conversionPlan = conversionPlan;
+        this.startOffset = startOffset;
+        committedOffset = startOffset;
+    }
+
+    String getLabel() {
+        return label;
+    }
+
+    long getTotal() {
+        return total;
+    }
+
+    PropertyConversionPlan getConversionPlan() {
+        return conversionPlan;
+    }
+
+    String getEntityName() {
+        return entityName;
+    }
+
+    long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return Offset of the first entity handed out by this source
+     */
+    long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * @return Number of entities from the start of the label, which have all been written
+     */
+    synchronized long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    /**
+     * @return Time in milliseconds when the first batch was read or {@code 0} if the label was not started yet
+     */
+    long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return Time in milliseconds when the last batch was written or {@code 0} if the label is not finished yet
+     */
+    long getFinishTime() {
+        return finishTime;
+    }
+
+    synchronized List<T> nextBatch(final int batchSize) {
+        if (startTime == 0) {
+            startTime = System.currentTimeMillis();
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info("Creating {} with label '{}' ({} total)...", entityName, label, total);
+        }
+        final List<T> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && iterator.hasNext())
+            batch.add(iterator.next());
+        if (batch.isEmpty()) {
+            exhausted = true;
+            checkFinished();
+        } else
+            pendingBatches++;
+        return batch;
+    }
+
+    /**
+     * @param offset Offset of the first entity of the batch in the label
+     */
+    void batchCompleted(final long offset, final int count) {
+        final long before = processed.getAndAdd(count);
+        final long after = before + count;
+        if (after / PROGRESS_INTERVAL > before / PROGRESS_INTERVAL && after < total && LOGGER.isInfoEnabled())
+            LOGGER.info("\t{} '{}' progress: {}/{}...", entityName, label, after, total);
+        synchronized (this) {
+            if (offset == committedOffset) {
+                committedOffset += count;
+                Integer next;
+                while ((next = completedBatches.remove(committedOffset)) != null)
+                    committedOffset += next;
+            } else
+                completedBatches.put(offset, count);
+            pendingBatches--;
+            checkFinished();
+        }
+    }
+
+    private void checkFinished() {
+        if (!exhausted || pendingBatches != 0 || finishTime != 0)
+            return;
+        finishTime = System.currentTimeMillis();
+        if (LOGGER.isInfoEnabled()) {
+            final long seconds = Math.max(1, (finishTime - startTime) / 1000);
+            LOGGER.info("Created {} {} with label '{}' in {}s ({}/s)", processed.get(), entityName, label, seconds,
+                        processed.get() / seconds);
+        }
+    }
+}
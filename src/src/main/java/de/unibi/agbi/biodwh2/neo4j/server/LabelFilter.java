@@ -0,0 +1,109 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.model.graph.Graph;
+import de.unibi.agbi.biodwh2.neo4j.server.model.CmdArgs;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Selects the node and edge labels of the workspace graph to import. Labels can be included or excluded by name and
+ * by data source, where the data source of a label is the prefix up to the first underscore, e.g. {@code HGNC} for
+ * {@code HGNC_Gene}. A label is imported if it matches the include lists, if any are given, and none of the exclude
+ * lists. Edges whose nodes are not imported are dropped, as their endpoints are unknown.
+ */
+final class LabelFilter {
+    private final Set<String> includedNodeLabels;
+    private final Set<String> excludedNodeLabels;
+    private final Set<String> includedEdgeLabels;
+    private final Set<String> excludedEdgeLabels;
+    private final Set<String> includedSources;
+    private final Set<String> excludedSources;
+
+    private LabelFilter(final Collection<String> includedNodeLabels, final Collection<String> excludedNodeLabels,
+                        final Collection<String> includedEdgeLabels, final Collection<String> excludedEdgeLabels,
+                        final Collection<String> includedSources, final Collection<String> excludedSources) {
+        this.includedNodeLabels = toSet(includedNodeLabels);
+        this.excludedNodeLabels = toSet(excludedNodeLabels);
+        this.includedEdgeLabels = toSet(includedEdgeLabels);
+        this.excludedEdgeLabels = toSet(excludedEdgeLabels);
+        this.includedSources = toSet(includedSources);
+        this.excludedSources = toSet(excludedSources);
+    }
+
+    static LabelFilter fromCommandLine(final CmdArgs commandLine) {
+        return new LabelFilter(commandLine.includeNodeLabels, commandLine.excludeNodeLabels,
+                               commandLine.includeEdgeLabels, commandLine.excludeEdgeLabels,
+                               commandLine.includeSources, commandLine.excludeSources);
+    }
+
+    private static Set<String> toSet(final Collection<String> values) {
+        if (values == null)
+            return Collections.emptySet();
+        final Set<String> result = new TreeSet<>();
+        for (final String value : values)
+            if (value != null && !value.isBlank())
+                result.add(value.trim());
+        return result;
+    }
+
+    boolean isEmpty() {
+        return includedNodeLabels.isEmpty() && excludedNodeLabels.isEmpty() && includedEdgeLabels.isEmpty() &&
+               excludedEdgeLabels.isEmpty() && includedSources.isEmpty() && excludedSources.isEmpty();
+    }
+
+    boolean isNodeLabelIncluded(final String label) {
+        return isIncluded(label, includedNodeLabels, excludedNodeLabels);
+    }
+
+    boolean isEdgeLabelIncluded(final String label) {
+        return isIncluded(label, includedEdgeLabels, excludedEdgeLabels);
+    }
+
+    private boolean isIncluded(final String label, final Set<String> included, final Set<String> excluded) {
+        if (!included.isEmpty() && !included.contains(label) || excluded.contains(label))
+            return false;
+        final String source = getSource(label);
+        return (includedSources.isEmpty() || includedSources.contains(source)) && !excludedSources.contains(source);
+    }
+
+    private static String getSource(final String label) {
+        final int separator = label.indexOf('_');
+        return separator < 0 ? label : label.substring(0, separator);
+    }
+
+    String[] getNodeLabels(final Graph graph) {
+        return Arrays.stream(graph.getNodeLabels()).filter(this::isNodeLabelIncluded).toArray(String[]::new);
+    }
+
+    String[] getEdgeLabels(final Graph graph) {
+        return Arrays.stream(graph.getEdgeLabels()).filter(this::isEdgeLabelIncluded).toArray(String[]::new);
+    }
+
+    /**
+     * Creates the set of included node ids, which has to be filled while the nodes are read, so edges whose nodes are
+     * not imported can be dropped. The mapping is used as a set, its values are meaningless.
+     *
+     * @return Empty set sized for the included nodes or {@code null} if the nodes of all labels are included
+     */
+    NodeIdMapping createIncludedNodeIds(final Graph graph, final Path spillDirectory) throws IOException {
+        final String[] nodeLabels = getNodeLabels(graph);
+        if (nodeLabels.length == graph.getNodeLabels().length)
+            return null;
+        long expectedSize = 0;
+        for (final String label : nodeLabels)
+            expectedSize += graph.getNumberOfNodes(label);
+        return new NodeIdMapping(expectedSize, spillDirectory, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    @Override
+    public String toString() {
+        return "nodes +" + includedNodeLabels + " -" + excludedNodeLabels + ", edges +" + includedEdgeLabels + " -" +
+               excludedEdgeLabels + ", sources +" + includedSources + " -" + excludedSources;
+    }
+}
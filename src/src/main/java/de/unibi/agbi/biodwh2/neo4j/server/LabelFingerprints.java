@@ -0,0 +1,214 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.io.mvstore.MVStoreModel;
+import de.unibi.agbi.biodwh2.core.model.graph.Edge;
+import de.unibi.agbi.biodwh2.core.model.graph.Graph;
+
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content fingerprints of the node and edge labels of a workspace graph. The fingerprint of a label combines the
+ * hashes of all its entities commutatively, so it does not depend on the iteration order of the repository. Property
+ * values are hashed directly without converting them to strings. Fingerprints are keyed by {@link #NODE_PREFIX} or
+ * {@link #EDGE_PREFIX} followed by the label.
+ * <p>
+ * Imports, which read all entities anyway, compute the fingerprints while streaming the entities using a
+ * {@link Tracker} instead of a separate pass over the workspace graph.
+ */
+final class LabelFingerprints {
+    static final String NODE_PREFIX = "node:";
+    static final String EDGE_PREFIX = "edge:";
+    private static final long NULL_HASH = 0x9E3779B97F4A7C15L;
+
+    private LabelFingerprints() {
+    }
+
+    static Map<String, String> compute(final Graph graph, final LabelFilter labelFilter) {
+        final Tracker tracker = new Tracker();
+        tracker.computeMissing(graph, labelFilter.getNodeLabels(graph), labelFilter.getEdgeLabels(graph));
+        return tracker.getFingerprints();
+    }
+
+    static Set<String> getLabels(final Map<String, String> fingerprints, final String prefix) {
+        final Set<String> labels = new TreeSet<>();
+        for (final String key : fingerprints.keySet())
+            if (key.startsWith(prefix))
+                labels.add(key.substring(prefix.length()));
+        return labels;
+    }
+
+    /**
+     * @return Labels of the current fingerprints with the given prefix which are new or changed compared to the
+     * previous fingerprints
+     */
+    static Set<String> getChangedLabels(final Map<String, String> previous, final Map<String, String> current,
+                                        final String prefix) {
+        final Set<String> labels = new TreeSet<>();
+        for (final String label : getLabels(current, prefix))
+            if (!current.get(prefix + label).equals(previous.get(prefix + label)))
+                labels.add(label);
+        return labels;
+    }
+
+    /**
+     * @return Labels of the previous fingerprints with the given prefix which no longer exist
+     */
+    static Set<String> getRemovedLabels(final Map<String, String> previous, final Map<String, String> current,
+                                        final String prefix) {
+        final Set<String> labels = getLabels(previous, prefix);
+        labels.removeAll(getLabels(current, prefix));
+        return labels;
+    }
+
+    private static long hashEntity(final MVStoreModel entity) {
+        long hash = 0;
+        for (final String propertyKey : entity.keySet())
+            hash += mix(31 * hashString(propertyKey) + hashValue(entity.getProperty(propertyKey)));
+        if (entity instanceof Edge edge)
+            hash += 31 * edge.getFromId() + edge.getToId();
+        return mix(hash);
+    }
+
+    private static long hashString(final String value) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < value.length(); i++)
+            hash = 31 * hash + value.charAt(i);
+        return hash;
+    }
+
+    /**
+     * Hashes the value depending on its type, so equal values of different types such as 1 and "1" differ.
+     */
+    private static long hashValue(final Object value) {
+        if (value == null)
+            return NULL_HASH;
+        if (value instanceof String string)
+            return hashString(string);
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+            return mix(((Number) value).longValue()) + 1;
+        if (value instanceof Double number)
+            return mix(Double.doubleToLongBits(number)) + 2;
+        if (value instanceof Float number)
+            return mix(Float.floatToIntBits(number)) + 3;
+        if (value instanceof Boolean bool)
+            return bool ? 5 : 7;
+        if (value instanceof Character character)
+            return mix(character) + 11;
+        if (value instanceof Object[] array) {
+            long hash = 13;
+            for (final Object element : array)
+                hash = 31 * hash + hashValue(element);
+            return hash;
+        }
+        if (value instanceof long[] array) {
+            long hash = 17;
+            for (final long element : array)
+                hash = 31 * hash + mix(element);
+            return hash;
+        }
+        if (value instanceof int[] array) {
+            long hash = 19;
+            for (final int element : array)
+                hash = 31 * hash + mix(element);
+            return hash;
+        }
+        if (value instanceof double[] array) {
+            long hash = 23;
+            for (final double element : array)
+                hash = 31 * hash + mix(Double.doubleToLongBits(element));
+            return hash;
+        }
+        if (value.getClass().isArray()) {
+            long hash = 29;
+            final int length = Array.getLength(value);
+            for (int i = 0; i < length; i++)
+                hash = 31 * hash + hashValue(Array.get(value, i));
+            return hash;
+        }
+        return hashString(value.toString());
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Collects the fingerprints of labels while their entities are streamed. Each tracked iterator has to be consumed
+     * completely and by one thread at a time.
+     */
+    static final class Tracker {
+        private final Map<String, Accumulator> accumulators = new ConcurrentHashMap<>();
+
+        <T extends MVStoreModel> Iterator<T> trackNodes(final String label, final Iterator<T> iterator) {
+            return track(NODE_PREFIX + label, iterator);
+        }
+
+        <T extends MVStoreModel> Iterator<T> trackEdges(final String label, final Iterator<T> iterator) {
+            return track(EDGE_PREFIX + label, iterator);
+        }
+
+        private <T extends MVStoreModel> Iterator<T> track(final String key, final Iterator<T> iterator) {
+            final Accumulator accumulator = new Accumulator();
+            accumulators.put(key, accumulator);
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    final T entity = iterator.next();
+                    accumulator.add(entity);
+                    return entity;
+                }
+            };
+        }
+
+        /**
+         * Computes the fingerprints of all labels, which were not tracked, in a separate pass.
+         */
+        void computeMissing(final Graph graph, final String[] nodeLabels, final String[] edgeLabels) {
+            Arrays.stream(nodeLabels).parallel().filter((label) -> !accumulators.containsKey(NODE_PREFIX + label))
+                  .forEach((label) -> consume(trackNodes(label, GraphRepositories.iterateNodes(graph, label))));
+            Arrays.stream(edgeLabels).parallel().filter((label) -> !accumulators.containsKey(EDGE_PREFIX + label))
+                  .forEach((label) -> consume(trackEdges(label, GraphRepositories.iterateEdges(graph, label))));
+        }
+
+        private static void consume(final Iterator<?> iterator) {
+            while (iterator.hasNext())
+                iterator.next();
+        }
+
+        Map<String, String> getFingerprints() {
+            final Map<String, String> fingerprints = new TreeMap<>();
+            for (final Map.Entry<String, Accumulator> entry : accumulators.entrySet())
+                fingerprints.put(entry.getKey(), entry.getValue().toString());
+            return fingerprints;
+        }
+    }
+
+    private static final class Accumulator {
+        private volatile long count;
+        private volatile long sum;
+
+        void add(final MVStoreModel entity) {
+            // Only called by the thread currently consuming the tracked iterator, volatile publishes the result
+            //noinspection NonAtomicOperationOnVolatileField
+            sum += hashEntity(entity);
+            //noinspection NonAtomicOperationOnVolatileField
+            count++;
+        }
+
+        @Override
+        public String toString() {
+            return Long.toHexString(count) + "-" + Long.toHexString(sum);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.model.graph.Graph;
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.dbms.api.DatabaseManagementServiceBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Plans the memory of the embedded Neo4j DBMS. The store size is taken from the existing store files or estimated
+ * from the node and edge counts of the workspace graph. The page cache is sized to hold the whole store if the
+ * physical memory left besides the JVM heap and an operating system reserve allows it. While creating the database,
+ * transaction state is kept off-heap so the heap remains available for the import pipeline, while serving, the
+ * memory of single and all concurrent transactions is bounded by the heap.
+ */
+final class MemoryPlanner {
+    private static final Logger LOGGER = LogManager.getLogger(MemoryPlanner.class);
+    private static final long MIN_PAGE_CACHE_BYTES = 128L * 1024 * 1024;
+    private static final long MIN_OS_RESERVE_BYTES = 1024L * 1024 * 1024;
+    private static final long MIN_STORE_SIZE_BYTES = 16L * 1024 * 1024;
+    private static final long NODE_RECORD_BYTES = 15;
+    private static final long RELATIONSHIP_RECORD_BYTES = 34;
+    private static final double PAGE_CACHE_HEADROOM = 1.1;
+
+    enum Phase {
+        CREATE,
+        SERVE
+    }
+
+    private MemoryPlanner() {
+    }
+
+    /**
+     * @param graphPath           Workspace graph used to estimate the store size if no store exists yet
+     * @param databasePath        Neo4j database directory
+     * @param workerCount         Number of concurrent import transactions
+     * @param maxTransactionBytes Transaction state memory budget per import transaction
+     * @param labelFilter         Labels of the workspace graph to import
+     */
+    static Plan plan(final Phase phase, final Path graphPath, final Path databasePath, final int workerCount,
+                     final long maxTransactionBytes, final LabelFilter labelFilter) {
+        final Plan plan = new Plan(phase);
+        final long totalMemory = getTotalPhysicalMemory();
+        final long maxHeap = Runtime.getRuntime().maxMemory();
+        final long reserve = Math.max(MIN_OS_RESERVE_BYTES, totalMemory / 10);
+        final long available = Math.max(0, totalMemory - maxHeap - reserve);
+        plan.addReason("Physical memory " + format(totalMemory) + ", max heap (-Xmx) " + format(maxHeap) +
+                       ", operating system reserve " + format(reserve) + ", available off-heap " + format(available));
+        final long storeSize = estimateStoreSize(plan, graphPath, databasePath, labelFilter);
+        long remaining = available;
+        if (phase == Phase.CREATE) {
+            final long txState = Math.min((long) workerCount * maxTransactionBytes, available / 4);
+            if (txState >= maxTransactionBytes) {
+                plan.txStateOffHeapBytes = txState;
+                remaining -= txState;
+                plan.addReason("Transaction state off-heap " + format(txState) + " for " + workerCount +
+                               " import transactions of up to " + format(maxTransactionBytes));
+            } else
+                plan.addReason("Transaction state on-heap as there is not enough off-heap memory for " +
+                               workerCount + " import transactions");
+            plan.addReason("Transaction memory unlimited, import transactions are bounded by the batch sizing");
+        } else {
+            plan.transactionMaxBytes = maxHeap / 4;
+            plan.transactionGlobalMaxBytes = maxHeap * 7 / 10;
+            plan.addReason("Query memory limited to " + format(plan.transactionMaxBytes) + " per transaction and " +
+                           format(plan.transactionGlobalMaxBytes) + " in total (25% and 70% of the heap)");
+        }
+        final long wanted = (long) (storeSize * PAGE_CACHE_HEADROOM);
+        plan.pageCacheBytes = Math.max(MIN_PAGE_CACHE_BYTES, Math.min(wanted, remaining));
+        if (plan.pageCacheBytes >= wanted)
+            plan.addReason("Page cache " + format(plan.pageCacheBytes) + " holds the whole store with 10% headroom");
+        else
+            plan.addReason("Page cache " + format(plan.pageCacheBytes) + " limited by available memory, " +
+                           (int) (plan.pageCacheBytes * 100 / Math.max(1, wanted)) + "% of the store is cached");
+        return plan;
+    }
+
+    private static long getTotalPhysicalMemory() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean bean)
+            return bean.getTotalMemorySize();
+        return Runtime.getRuntime().maxMemory() * 2;
+    }
+
+    private static long estimateStoreSize(final Plan plan, final Path graphPath, final Path databasePath,
+                                          final LabelFilter labelFilter) {
+        if (Files.isDirectory(databasePath)) {
+            final long size = FileUtils.sizeOfDirectory(databasePath.toFile());
+            if (size > MIN_STORE_SIZE_BYTES) {
+                plan.addReason("Existing store files " + format(size));
+                return size;
+            }
+        }
+        try (Graph graph = new Graph(graphPath, true, true)) {
+            long nodes = 0;
+            for (final String label : labelFilter.getNodeLabels(graph))
+                nodes += graph.getNumberOfNodes(label);
+            long edges = 0;
+            for (final String label : labelFilter.getEdgeLabels(graph))
+                edges += graph.getNumberOfEdges(label);
+            // The MVStore file size approximates the property payload of the imported share of all entities, the
+            // records are added on top
+            final double share = (double) (nodes + edges) / Math.max(1, graph.getNumberOfNodes() +
+                                                                        graph.getNumberOfEdges());
+            final long size = nodes * NODE_RECORD_BYTES + edges * RELATIONSHIP_RECORD_BYTES +
+                              (long) (Files.size(graphPath) * share);
+            plan.addReason("Estimated store size " + format(size) + " for " + nodes + " nodes and " + edges +
+                           " edges");
+            return Math.max(MIN_STORE_SIZE_BYTES, size);
+        } catch (Exception e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to estimate the store size from the workspace graph", e);
+            plan.addReason("Store size unknown");
+            return MIN_STORE_SIZE_BYTES;
+        }
+    }
+
+    private static String format(final long bytes) {
+        return FileUtils.byteCountToDisplaySize(bytes);
+    }
+
+    static final class Plan {
+        private final Phase phase;
+        private final List<String> reasons = new ArrayList<>();
+        private long pageCacheBytes;
+        private long txStateOffHeapBytes;
+        private long transactionMaxBytes;
+        private long transactionGlobalMaxBytes;
+
+        private Plan(final Phase phase) {
+            this.phase = phase;
+        }
+
+        private void addReason(final String reason) {
+            reasons.add(reason);
+        }
+
+        void apply(final DatabaseManagementServiceBuilder builder) {
+            builder.setConfig(GraphDatabaseSettings.pagecache_memory, pageCacheBytes);
+            if (txStateOffHeapBytes > 0) {
+                builder.setConfig(GraphDatabaseSettings.tx_state_memory_allocation,
+                                  GraphDatabaseSettings.TransactionStateMemoryAllocation.OFF_HEAP);
+                builder.setConfig(GraphDatabaseSettings.tx_state_max_off_heap_memory, txStateOffHeapBytes);
+            }
+            if (transactionMaxBytes > 0)
+                builder.setConfig(GraphDatabaseSettings.memory_transaction_max_size, transactionMaxBytes);
+            if (transactionGlobalMaxBytes > 0)
+                builder.setConfig(GraphDatabaseSettings.memory_transaction_global_max_size,
+                                  transactionGlobalMaxBytes);
+        }
+
+        String getSummary() {
+            return phase.name().toLowerCase(Locale.ROOT) + " phase: page cache " + format(pageCacheBytes) +
+                   ", off-heap transaction state " + (txStateOffHeapBytes > 0 ? format(txStateOffHeapBytes) : "-") +
+                   ", transaction memory " + (transactionMaxBytes > 0 ? format(transactionMaxBytes) : "unlimited") +
+                   ", total transaction memory " +
+                   (transactionGlobalMaxBytes > 0 ? format(transactionGlobalMaxBytes) : "unlimited");
+        }
+
+        String getReport() {
+            final StringBuilder builder = new StringBuilder("Memory plan for the ").append(getSummary());
+            for (final String reason : reasons)
+                builder.append(System.lineSeparator()).append("  - ").append(reason);
+            return builder.toString();
+        }
+    }
+}
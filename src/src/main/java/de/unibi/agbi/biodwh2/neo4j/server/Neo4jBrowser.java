@@ -3,13 +3,17 @@ package de.unibi.agbi.biodwh2.neo4j.server;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.unibi.agbi.biodwh2.core.model.github.GithubRelease;
+import de.unibi.agbi.biodwh2.neo4j.server.model.CmdArgs;
 import io.javalin.Javalin;
 import io.javalin.config.JavalinConfig;
+import io.javalin.http.HttpStatus;
 import io.javalin.http.staticfiles.Location;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.ConnectionLimit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,12 +25,16 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 final class Neo4jBrowser {
@@ -34,17 +42,36 @@ final class Neo4jBrowser {
     private static final String NEO4J_BROWSER_RELEASE_URL = "https://api.github.com/repos/neo4j/neo4j-browser/releases";
     private static final String FALLBACK_DOWNLOAD_URL = "https://github.com/neo4j/neo4j-browser/releases/download/4.1.3/neo4j-browser-4.1.3.tgz";
     private static final String BROWSER_ARCHIVE_FILE_NAME = "neo4j-browser.tgz";
+    private static final String BUNDLED_BROWSER_ARCHIVE_RESOURCE = "/neo4j-browser.tgz";
+    private static final String EXTRACTION_MANIFEST_FILE_NAME = "extraction-manifest.txt";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
 
     private final String neo4jPath;
     private final String browserDistPath;
+    private final int maxConnections;
+    private final boolean offline;
+    private final String browserArchivePath;
+    private final long queryCacheBytes;
+    private final long queryMaxResultBytes;
 
-    public Neo4jBrowser(final String workspacePath) {
+    public Neo4jBrowser(final String workspacePath, final CmdArgs commandLine) {
         neo4jPath = Paths.get(workspacePath, "neo4j").toString();
         browserDistPath = Paths.get(neo4jPath, "neo4j-browser/package/dist").toString();
+        maxConnections = commandLine.httpMaxConnections;
+        offline = commandLine.offline;
+        browserArchivePath = commandLine.browserArchive;
+        queryCacheBytes = commandLine.queryCacheSize * 1024L * 1024L;
+        queryMaxResultBytes = commandLine.queryMaxResultSize * 1024L * 1024L;
     }
 
     public boolean downloadNeo4jBrowser() {
         final File browserArchiveFile = Paths.get(neo4jPath, BROWSER_ARCHIVE_FILE_NAME).toFile();
+        if (browserArchivePath != null)
+            return copyNeo4jBrowserArchive(browserArchiveFile);
+        if (isExtractionUpToDate(browserArchiveFile))
+            return true;
+        if (!browserArchiveFile.exists() && offline)
+            return extractBundledNeo4jBrowserArchive(browserArchiveFile);
         if (!browserArchiveFile.exists()) {
             if (LOGGER.isInfoEnabled())
                 LOGGER.info("Downloading neo4j-browser...");
@@ -71,6 +98,84 @@ final class Neo4jBrowser {
         return extractNeo4jBrowserArchive(browserArchiveFile);
     }
 
+    /**
+     * Uses the archive given on the command line, unless it was already extracted.
+     */
+    private boolean copyNeo4jBrowserArchive(final File browserArchiveFile) {
+        final File sourceFile = Paths.get(browserArchivePath).toFile();
+        try {
+            if (!browserArchiveFile.exists() || !FileUtils.contentEquals(sourceFile, browserArchiveFile))
+                FileUtils.copyFile(sourceFile, browserArchiveFile);
+        } catch (IOException e) {
+            if (LOGGER.isErrorEnabled())
+                LOGGER.error("Failed to copy neo4j-browser archive '" + browserArchivePath + "'", e);
+            return false;
+        }
+        return isExtractionUpToDate(browserArchiveFile) || extractNeo4jBrowserArchive(browserArchiveFile);
+    }
+
+    private boolean extractBundledNeo4jBrowserArchive(final File browserArchiveFile) {
+        try (InputStream inputStream = Neo4jBrowser.class.getResourceAsStream(BUNDLED_BROWSER_ARCHIVE_RESOURCE)) {
+            if (inputStream == null) {
+                if (LOGGER.isErrorEnabled())
+                    LOGGER.error("No bundled neo4j-browser available in offline mode, use --browser-archive");
+                return false;
+            }
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info("Using bundled neo4j-browser...");
+            FileUtils.copyInputStreamToFile(inputStream, browserArchiveFile);
+        } catch (IOException e) {
+            if (LOGGER.isErrorEnabled())
+                LOGGER.error("Failed to copy bundled neo4j-browser archive", e);
+            return false;
+        }
+        return extractNeo4jBrowserArchive(browserArchiveFile);
+    }
+
+    /**
+     * Checks the extraction manifest written after the last extraction. The first line holds the size, modification
+     * time and fingerprint of the extracted archive, followed by the extracted files, which all have to exist. The
+     * archive is only hashed if its size or modification time changed. If the archive was removed since, the
+     * extraction is still considered complete.
+     */
+    private boolean isExtractionUpToDate(final File browserArchiveFile) {
+        final Path manifestPath = Paths.get(neo4jPath, EXTRACTION_MANIFEST_FILE_NAME);
+        if (!Files.exists(manifestPath) || !Paths.get(browserDistPath, "index.html").toFile().exists())
+            return false;
+        try {
+            final List<String> lines = Files.readAllLines(manifestPath, StandardCharsets.UTF_8);
+            if (lines.isEmpty())
+                return false;
+            final String[] header = StringUtils.split(lines.get(0), '\t');
+            if (header.length != 3)
+                return false;
+            final Path destination = Paths.get(neo4jPath, "neo4j-browser");
+            for (int i = 1; i < lines.size(); i++)
+                if (!Files.exists(destination.resolve(lines.get(i))))
+                    return false;
+            if (!browserArchiveFile.exists() || getArchiveStamp(browserArchiveFile).equals(
+                    header[0] + '\t' + header[1]))
+                return true;
+            final String fingerprint = getArchiveFingerprint(browserArchiveFile);
+            if (!header[2].equals(fingerprint))
+                return false;
+            // Same content with a new modification time, so the next start does not hash the archive again
+            lines.set(0, getArchiveStamp(browserArchiveFile) + '\t' + fingerprint);
+            Files.write(manifestPath, lines, StandardCharsets.UTF_8);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String getArchiveStamp(final File browserArchiveFile) {
+        return browserArchiveFile.length() + "\t" + browserArchiveFile.lastModified();
+    }
+
+    private static String getArchiveFingerprint(final File browserArchiveFile) throws IOException {
+        return HashUtils.getContentFingerprintFromFile(browserArchiveFile.getPath(), null);
+    }
+
     private String[] getNeo4jBrowserDownloadUrlCandidates() {
         final TypeReference<List<GithubRelease>> releaseListType = new TypeReference<List<GithubRelease>>() {
         };
@@ -90,22 +195,39 @@ final class Neo4jBrowser {
         return candidates.stream().sorted(Comparator.reverseOrder()).toArray(String[]::new);
     }
 
+    /**
+     * Replaces the extracted browser with the content of the archive, precompresses the assets and records the
+     * extraction manifest, so later starts skip the archive.
+     */
     private boolean extractNeo4jBrowserArchive(final File browserArchiveFile) {
-        final String destination = Paths.get(neo4jPath, "neo4j-browser").toString();
+        final Path destination = Paths.get(neo4jPath, "neo4j-browser").toAbsolutePath().normalize();
+        final Path manifestPath = Paths.get(neo4jPath, EXTRACTION_MANIFEST_FILE_NAME);
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Extracting neo4j-browser...");
         try (final InputStream inputStream = new FileInputStream(browserArchiveFile);
              final GzipCompressorInputStream gzipInputStream = new GzipCompressorInputStream(inputStream);
              final TarArchiveInputStream tarInputStream = new TarArchiveInputStream(gzipInputStream)) {
+            Files.deleteIfExists(manifestPath);
+            FileUtils.deleteDirectory(destination.toFile());
+            final List<String> manifest = new ArrayList<>();
+            manifest.add(getArchiveStamp(browserArchiveFile) + '\t' + getArchiveFingerprint(browserArchiveFile));
             TarArchiveEntry entry;
             while ((entry = (TarArchiveEntry) tarInputStream.getNextEntry()) != null) {
                 if (entry.isFile()) {
-                    final Path f = Paths.get(destination, entry.getName());
-                    final Path parent = f.getParent();
-                    if (parent != null && !parent.toFile().exists())
-                        Files.createDirectories(parent);
-                    if (!f.toFile().exists())
-                        Files.copy(tarInputStream, f);
+                    final Path f = destination.resolve(entry.getName()).normalize();
+                    if (!f.startsWith(destination))
+                        continue;
+                    Files.createDirectories(f.getParent());
+                    Files.copy(tarInputStream, f, StandardCopyOption.REPLACE_EXISTING);
+                    manifest.add(destination.relativize(f).toString());
                 }
             }
+            if (Paths.get(browserDistPath).toFile().exists()) {
+                if (LOGGER.isInfoEnabled())
+                    LOGGER.info("Precompressing neo4j-browser assets...");
+                BrowserAssets.precompress(Paths.get(browserDistPath));
+            }
+            Files.write(manifestPath, manifest, StandardCharsets.UTF_8);
         } catch (IOException e) {
             if (LOGGER.isErrorEnabled())
                 LOGGER.error("Failed to extract zipped neo4j-browser file.", e);
@@ -114,10 +236,32 @@ final class Neo4jBrowser {
         return true;
     }
 
-    public void startNeo4jBrowser(Integer port) {
+    public void startNeo4jBrowser(Integer port, final Neo4jService service) {
         if (port == null)
             port = 7474;
-        Javalin.create(this::configureJavalin).start(port);
+        final BrowserAssets assets = loadBrowserAssets();
+        final Javalin app = Javalin.create((config) -> configureJavalin(config, assets == null));
+        app.get("/metrics", (ctx) -> ctx.contentType(PROMETHEUS_CONTENT_TYPE).result(
+                service.getMetrics().scrape(service.isReady())));
+        app.get("/health", (ctx) -> {
+            final boolean ready = service.isReady();
+            ctx.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).json(
+                    Map.of("status", ready ? "UP" : "STARTING", "ready", ready));
+        });
+        final QueryResultCache queryCache = queryCacheBytes > 0 ? new QueryResultCache(queryCacheBytes, Paths.get(
+                neo4jPath, "checksum.txt")) : null;
+        service.getMetrics().setQueryResultCache(queryCache);
+        app.post("/cypher", new CypherEndpoint(service.getDatabaseService(), queryCache, queryMaxResultBytes)::handle);
+        final ExportEndpoint exportEndpoint = new ExportEndpoint(service.getDatabaseService());
+        app.get("/export/nodes/{label}", exportEndpoint::handleNodes);
+        app.get("/export/relationships/{type}", exportEndpoint::handleRelationships);
+        app.post("/export", exportEndpoint::handleQuery);
+        if (assets != null)
+            app.get("/*", (ctx) -> {
+                if (!assets.handle(ctx))
+                    ctx.status(HttpStatus.NOT_FOUND);
+            });
+        app.start(port);
         if (Desktop.isDesktopSupported() && Desktop.getDesktop().isSupported(Desktop.Action.BROWSE)) {
             try {
                 Desktop.getDesktop().browse(new URI("http://localhost:" + port + "/"));
@@ -128,8 +272,23 @@ final class Neo4jBrowser {
         }
     }
 
-    private void configureJavalin(final JavalinConfig config) {
-        config.staticFiles.add(browserDistPath, Location.EXTERNAL);
+    private BrowserAssets loadBrowserAssets() {
+        try {
+            return BrowserAssets.load(Paths.get(browserDistPath));
+        } catch (IOException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to load neo4j-browser assets into memory, serving them from disk", e);
+            return null;
+        }
+    }
+
+    private void configureJavalin(final JavalinConfig config, final boolean serveStaticFiles) {
+        if (serveStaticFiles)
+            config.staticFiles.add(browserDistPath, Location.EXTERNAL);
         config.showJavalinBanner = false;
+        // Requests block on database queries, which is cheap with virtual threads. They require Java 21, which is
+        // the build and runtime baseline for this reason.
+        config.useVirtualThreads = true;
+        config.jetty.modifyServer((server) -> server.addBean(new ConnectionLimit(maxConnections, server)));
     }
 }
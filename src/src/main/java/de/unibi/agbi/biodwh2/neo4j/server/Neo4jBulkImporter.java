@@ -0,0 +1,371 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.io.mvstore.MVStoreModel;
+import de.unibi.agbi.biodwh2.core.model.graph.Edge;
+import de.unibi.agbi.biodwh2.core.model.graph.Graph;
+import de.unibi.agbi.biodwh2.core.model.graph.Node;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.neo4j.configuration.Config;
+import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.internal.batchimport.AdditionalInitialIds;
+import org.neo4j.internal.batchimport.BatchImporter;
+import org.neo4j.internal.batchimport.BatchImporterFactory;
+import org.neo4j.internal.batchimport.Configuration;
+import org.neo4j.internal.batchimport.Monitor;
+import org.neo4j.internal.batchimport.input.*;
+import org.neo4j.internal.batchimport.staging.ExecutionMonitor;
+import org.neo4j.io.fs.DefaultFileSystemAbstraction;
+import org.neo4j.io.layout.DatabaseLayout;
+import org.neo4j.io.layout.Neo4jLayout;
+import org.neo4j.io.pagecache.context.CursorContextFactory;
+import org.neo4j.io.pagecache.tracing.PageCacheTracer;
+import org.neo4j.kernel.impl.index.schema.IndexImporterFactoryImpl;
+import org.neo4j.kernel.impl.scheduler.JobSchedulerFactory;
+import org.neo4j.kernel.impl.transaction.log.EmptyLogTailMetadata;
+import org.neo4j.kernel.impl.transaction.log.files.TransactionLogInitializer;
+import org.neo4j.logging.internal.NullLogService;
+import org.neo4j.memory.EmptyMemoryTracker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the workspace graph directly into a new Neo4j store using the parallel batch importer. No database
+ * management service may be running on the target store during the import.
+ */
+final class Neo4jBulkImporter {
+    private static final Logger LOGGER = LogManager.getLogger(Neo4jBulkImporter.class);
+    private static final int CHUNK_SIZE = 10_000;
+    private static final long ESTIMATED_PROPERTIES_PER_NODE = 4;
+    private static final long ESTIMATED_PROPERTY_SIZE = 24;
+
+    private final Path databasePath;
+    private final Path badEntriesFilePath;
+    private final Path nodeIdsPath;
+    private final LabelFilter labelFilter;
+
+    /**
+     * @param nodeIdsPath Spill directory of the included node ids, which are only collected if the label filter
+     *                    excludes node labels
+     */
+    Neo4jBulkImporter(final Path databasePath, final Path badEntriesFilePath, final Path nodeIdsPath,
+                      final LabelFilter labelFilter) {
+        this.databasePath = databasePath;
+        this.badEntriesFilePath = badEntriesFilePath;
+        this.nodeIdsPath = nodeIdsPath;
+        this.labelFilter = labelFilter;
+    }
+
+    /**
+     * @param fingerprints Tracker, which computes the label fingerprints while the entities are streamed
+     * @param metrics      Metrics, which track the progress of the labels read by the importer
+     */
+    void importGraph(final Graph graph, final LabelFingerprints.Tracker fingerprints,
+                     final ImportMetrics metrics) throws Exception {
+        final Config config = Config.newBuilder().set(GraphDatabaseSettings.neo4j_home, databasePath.toAbsolutePath())
+                                    .build();
+        final DatabaseLayout databaseLayout = Neo4jLayout.of(config).databaseLayout(
+                GraphDatabaseSettings.DEFAULT_DATABASE_NAME);
+        final Groups groups = new Groups();
+        final Group group = groups.getOrCreate(null);
+        final String[] nodeLabels = labelFilter.getNodeLabels(graph);
+        final String[] edgeLabels = labelFilter.getEdgeLabels(graph);
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Bulk importing {} node and {} edge labels into '{}'...", nodeLabels.length,
+                        edgeLabels.length, databaseLayout.databaseDirectory());
+        // The batch importer reads all nodes before the edges, so the included node ids are complete by then
+        final AtomicLong droppedEdges = new AtomicLong();
+        try (final NodeIdMapping includedNodeIds = labelFilter.createIncludedNodeIds(graph, nodeIdsPath);
+             final var fileSystem = new DefaultFileSystemAbstraction();
+             final var jobScheduler = JobSchedulerFactory.createInitialisedScheduler();
+             final OutputStream badEntriesStream = Files.newOutputStream(badEntriesFilePath);
+             final Collector badCollector = Collectors.badCollector(badEntriesStream,
+                                                                    BadCollector.UNLIMITED_TOLERANCE)) {
+            final BatchImporter importer = BatchImporterFactory.withHighestPriority().instantiate(
+                    databaseLayout, fileSystem, PageCacheTracer.NULL, Configuration.DEFAULT,
+                    NullLogService.getInstance(), ExecutionMonitor.INVISIBLE, AdditionalInitialIds.EMPTY,
+                    new EmptyLogTailMetadata(config), config, Monitor.NO_MONITOR, jobScheduler, badCollector,
+                    TransactionLogInitializer.getLogFilesInitializer(), new IndexImporterFactoryImpl(),
+                    EmptyMemoryTracker.INSTANCE, CursorContextFactory.NULL_CONTEXT_FACTORY);
+            final Input input = Input.input(
+                    () -> new NodeInputIterator(graph, nodeLabels, group, fingerprints, metrics, includedNodeIds),
+                    () -> new EdgeInputIterator(graph, edgeLabels, group, fingerprints, metrics, includedNodeIds,
+                                                droppedEdges), IdType.INTEGER,
+                    getEstimates(graph, nodeLabels, edgeLabels), groups);
+            importer.doImport(input);
+            if (droppedEdges.get() > 0 && LOGGER.isInfoEnabled())
+                LOGGER.info("Dropped {} edges whose nodes are excluded by the label filter", droppedEdges.get());
+            if (badCollector.badEntries() > 0 && LOGGER.isWarnEnabled())
+                LOGGER.warn("Skipped {} bad entries during bulk import, see '{}'", badCollector.badEntries(),
+                            badEntriesFilePath);
+        }
+    }
+
+    private static Input.Estimates getEstimates(final Graph graph, final String[] nodeLabels,
+                                                final String[] edgeLabels) {
+        long numberOfNodes = 0;
+        for (final String label : nodeLabels)
+            numberOfNodes += graph.getNumberOfNodes(label);
+        long numberOfEdges = 0;
+        for (final String label : edgeLabels)
+            numberOfEdges += graph.getNumberOfEdges(label);
+        final long numberOfNodeProperties = numberOfNodes * ESTIMATED_PROPERTIES_PER_NODE;
+        return Input.knownEstimates(numberOfNodes, numberOfEdges, numberOfNodeProperties, numberOfEdges,
+                                    numberOfNodeProperties * ESTIMATED_PROPERTY_SIZE,
+                                    numberOfEdges * ESTIMATED_PROPERTY_SIZE, nodeLabels.length);
+    }
+
+    /**
+     * Hands out chunks of entities label by label. The parallel importer calls {@link #next(InputChunk)} from
+     * multiple threads, so only the repository read is synchronized while the property conversion in
+     * {@link EntityChunk#next(InputEntityVisitor)} runs concurrently. The entities are read through a
+     * {@link LabelBatchSource} per label, whose batches are completed once a chunk has been visited entirely.
+     */
+    private abstract static class GraphInputIterator<T extends MVStoreModel> implements InputIterator {
+        private final String entityName;
+        private final String[] labels;
+        private final ImportMetrics metrics;
+        private int labelIndex = -1;
+        private LabelBatchSource<T> source;
+        private long offset;
+
+        GraphInputIterator(final String entityName, final String[] labels, final ImportMetrics metrics) {
+            this.entityName = entityName;
+            this.labels = labels;
+            this.metrics = metrics;
+        }
+
+        abstract Iterator<T> iterate(final String label);
+
+        abstract long count(final String label);
+
+        abstract PropertyConversionPlan createConversionPlan(final String label);
+
+        /**
+         * @return {@code true} if the entity is imported
+         */
+        abstract boolean accept(final T entity);
+
+        @Override
+        public synchronized boolean next(final InputChunk chunk) {
+            //noinspection unchecked
+            final EntityChunk<T> entityChunk = (EntityChunk<T>) chunk;
+            entityChunk.reset();
+            while (entityChunk.entities.size() < CHUNK_SIZE) {
+                if (source == null) {
+                    if (labelIndex + 1 >= labels.length)
+                        break;
+                    final String label = labels[++labelIndex];
+                    source = new LabelBatchSource<>(entityName, label, iterate(label), count(label),
+                                                    createConversionPlan(label));
+                    offset = 0;
+                    if (metrics != null) {
+                        metrics.setPhase(entityName);
+                        metrics.addSource(source);
+                    }
+                }
+                final List<T> batch = source.nextBatch(CHUNK_SIZE - entityChunk.entities.size());
+                if (batch.isEmpty()) {
+                    source = null;
+                    continue;
+                }
+                entityChunk.addBatch(source, offset, batch.size());
+                offset += batch.size();
+                for (final T entity : batch)
+                    if (accept(entity))
+                        entityChunk.add(entity, source.getConversionPlan());
+            }
+            if (entityChunk.entities.isEmpty()) {
+                // Batches whose entities were all dropped are never visited by the importer
+                entityChunk.completeBatches();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class NodeInputIterator extends GraphInputIterator<Node> {
+        private final Graph graph;
+        private final Group group;
+        private final LabelFingerprints.Tracker fingerprints;
+        private final NodeIdMapping includedNodeIds;
+
+        NodeInputIterator(final Graph graph, final String[] labels, final Group group,
+                          final LabelFingerprints.Tracker fingerprints, final ImportMetrics metrics,
+                          final NodeIdMapping includedNodeIds) {
+            super("nodes", labels, metrics);
+            this.graph = graph;
+            this.group = group;
+            this.fingerprints = fingerprints;
+            this.includedNodeIds = includedNodeIds;
+        }
+
+        @Override
+        boolean accept(final Node node) {
+            if (includedNodeIds != null)
+                includedNodeIds.put(node.getId(), 0);
+            return true;
+        }
+
+        @Override
+        Iterator<Node> iterate(final String label) {
+            return fingerprints.trackNodes(label, GraphRepositories.iterateNodes(graph, label));
+        }
+
+        @Override
+        long count(final String label) {
+            return graph.getNumberOfNodes(label);
+        }
+
+        @Override
+        PropertyConversionPlan createConversionPlan(final String label) {
+            return PropertyConversionPlan.forNodeLabel(label);
+        }
+
+        @Override
+        public InputChunk newChunk() {
+            return new EntityChunk<Node>() {
+                @Override
+                void visit(final Node node, final PropertyConversionPlan conversionPlan,
+                           final InputEntityVisitor visitor) {
+                    visitor.id(node.getId(), group);
+                    visitor.labels(conversionPlan.getNames());
+                    visitProperties(node, conversionPlan, visitor);
+                }
+            };
+        }
+    }
+
+    private static final class EdgeInputIterator extends GraphInputIterator<Edge> {
+        private final Graph graph;
+        private final Group group;
+        private final LabelFingerprints.Tracker fingerprints;
+        private final NodeIdMapping includedNodeIds;
+        private final AtomicLong droppedEdges;
+
+        EdgeInputIterator(final Graph graph, final String[] labels, final Group group,
+                          final LabelFingerprints.Tracker fingerprints, final ImportMetrics metrics,
+                          final NodeIdMapping includedNodeIds, final AtomicLong droppedEdges) {
+            super("edges", labels, metrics);
+            this.graph = graph;
+            this.group = group;
+            this.fingerprints = fingerprints;
+            this.includedNodeIds = includedNodeIds;
+            this.droppedEdges = droppedEdges;
+        }
+
+        @Override
+        boolean accept(final Edge edge) {
+            if (includedNodeIds == null || includedNodeIds.get(edge.getFromId()) != NodeIdMapping.MISSING &&
+                                           includedNodeIds.get(edge.getToId()) != NodeIdMapping.MISSING)
+                return true;
+            droppedEdges.incrementAndGet();
+            return false;
+        }
+
+        @Override
+        Iterator<Edge> iterate(final String label) {
+            return fingerprints.trackEdges(label, GraphRepositories.iterateEdges(graph, label));
+        }
+
+        @Override
+        long count(final String label) {
+            return graph.getNumberOfEdges(label);
+        }
+
+        @Override
+        PropertyConversionPlan createConversionPlan(final String label) {
+            return PropertyConversionPlan.forEdgeLabel(label);
+        }
+
+        @Override
+        public InputChunk newChunk() {
+            return new EntityChunk<Edge>() {
+                @Override
+                void visit(final Edge edge, final PropertyConversionPlan conversionPlan,
+                           final InputEntityVisitor visitor) {
+                    visitor.startId(edge.getFromId(), group);
+                    visitor.endId(edge.getToId(), group);
+                    visitor.type(conversionPlan.getNames()[0]);
+                    visitProperties(edge, conversionPlan, visitor);
+                }
+            };
+        }
+    }
+
+    private abstract static class EntityChunk<T extends MVStoreModel> implements InputChunk {
+        private final List<T> entities = new ArrayList<>(CHUNK_SIZE);
+        private final List<PropertyConversionPlan> conversionPlans = new ArrayList<>(CHUNK_SIZE);
+        private final List<LabelBatchSource<?>> batchSources = new ArrayList<>();
+        private final List<long[]> batchRanges = new ArrayList<>();
+        private String[] keys = new String[16];
+        private Object[] values = new Object[16];
+        private int position;
+
+        abstract void visit(final T entity, final PropertyConversionPlan conversionPlan,
+                            final InputEntityVisitor visitor);
+
+        void add(final T entity, final PropertyConversionPlan conversionPlan) {
+            entities.add(entity);
+            conversionPlans.add(conversionPlan);
+        }
+
+        void addBatch(final LabelBatchSource<?> source, final long offset, final int count) {
+            batchSources.add(source);
+            batchRanges.add(new long[]{offset, count});
+        }
+
+        void completeBatches() {
+            for (int i = 0; i < batchSources.size(); i++)
+                batchSources.get(i).batchCompleted(batchRanges.get(i)[0], (int) batchRanges.get(i)[1]);
+            batchSources.clear();
+            batchRanges.clear();
+        }
+
+        void reset() {
+            completeBatches();
+            entities.clear();
+            conversionPlans.clear();
+            position = 0;
+        }
+
+        @Override
+        public boolean next(final InputEntityVisitor visitor) throws IOException {
+            if (position >= entities.size()) {
+                completeBatches();
+                return false;
+            }
+            visit(entities.get(position), conversionPlans.get(position), visitor);
+            position++;
+            visitor.endOfEntity();
+            return true;
+        }
+
+        void visitProperties(final T entity, final PropertyConversionPlan conversionPlan,
+                             final InputEntityVisitor visitor) {
+            final int size = entity.keySet().size();
+            if (keys.length < size) {
+                keys = new String[size];
+                values = new Object[size];
+            }
+            final int count = conversionPlan.convert(entity, keys, values);
+            for (int i = 0; i < count; i++)
+                visitor.property(keys[i], values[i]);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
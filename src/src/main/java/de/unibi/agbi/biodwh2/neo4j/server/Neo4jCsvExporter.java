@@ -0,0 +1,330 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.io.mvstore.MVStoreModel;
+import de.unibi.agbi.biodwh2.core.model.graph.Edge;
+import de.unibi.agbi.biodwh2.core.model.graph.Graph;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the workspace graph as gzip compressed CSV files for {@code neo4j-admin database import full}. Every label
+ * is written to its own data file by one of the worker threads. As the properties of a label are only known once it
+ * has been read completely, the typed header of each label is written to a separate header file afterward. Columns
+ * of rows written before a property was first seen are left empty, and column types are widened if a property has
+ * values of different types. The import options and file groups are written to the {@link #ARGUMENTS_FILE_NAME}
+ * argument file, which is passed to neo4j-admin with the {@code @} prefix.
+ * <p>
+ * If the label filter excludes node labels, the node labels are exported first while collecting the included node
+ * ids, and edges whose nodes are not exported are dropped.
+ */
+final class Neo4jCsvExporter {
+    private static final Logger LOGGER = LogManager.getLogger(Neo4jCsvExporter.class);
+    static final String ARGUMENTS_FILE_NAME = "import.args";
+    private static final String NODE_ID_SPACE = "nodes";
+    private static final char ARRAY_DELIMITER = '\u001F';
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long PROGRESS_INTERVAL = 1_000_000;
+
+    private final Path exportPath;
+    private final Path nodeIdsPath;
+    private final int workerCount;
+    private final LabelFilter labelFilter;
+
+    /**
+     * @param nodeIdsPath Spill directory of the included node ids, which are only collected if the label filter
+     *                    excludes node labels
+     */
+    Neo4jCsvExporter(final Path exportPath, final Path nodeIdsPath, final int workerCount,
+                     final LabelFilter labelFilter) {
+        this.exportPath = exportPath;
+        this.nodeIdsPath = nodeIdsPath;
+        this.workerCount = workerCount;
+        this.labelFilter = labelFilter;
+    }
+
+    void export(final Graph graph) throws IOException, InterruptedException, ExecutionException {
+        Files.createDirectories(exportPath);
+        deleteOldExport();
+        final String[] nodeLabels = labelFilter.getNodeLabels(graph);
+        final String[] edgeLabels = labelFilter.getEdgeLabels(graph);
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Exporting {} node and {} edge labels to '{}' using {} workers...", nodeLabels.length,
+                        edgeLabels.length, exportPath, workerCount);
+        final ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        final List<Future<String>> futures = new ArrayList<>();
+        final List<String> arguments = new ArrayList<>();
+        arguments.add("--id-type=INTEGER");
+        arguments.add("--array-delimiter=U+001F");
+        arguments.add("--skip-bad-relationships=true");
+        // String values may contain line breaks, which are written as is inside the quoted fields
+        arguments.add("--multiline-fields=true");
+        try (NodeIdMapping includedNodeIds = labelFilter.createIncludedNodeIds(graph, nodeIdsPath)) {
+            for (int i = 0; i < nodeLabels.length; i++) {
+                final String label = nodeLabels[i];
+                final String fileName = getFileName("nodes", i, label);
+                futures.add(executor.submit(() -> "--nodes=" + quote(label + "=" + exportLabel(
+                        fileName, false, label, GraphRepositories.iterateNodes(graph, label),
+                        PropertyConversionPlan.forNodeLabel(label), includedNodeIds))));
+            }
+            // The included node ids have to be complete before the first edge is checked
+            if (includedNodeIds != null) {
+                for (final Future<String> future : futures)
+                    arguments.add(future.get());
+                futures.clear();
+            }
+            for (int i = 0; i < edgeLabels.length; i++) {
+                final String label = edgeLabels[i];
+                final String fileName = getFileName("relationships", i, label);
+                futures.add(executor.submit(() -> "--relationships=" + quote(label + "=" + exportLabel(
+                        fileName, true, label, GraphRepositories.iterateEdges(graph, label),
+                        PropertyConversionPlan.forEdgeLabel(label), includedNodeIds))));
+            }
+            for (final Future<String> future : futures)
+                arguments.add(future.get());
+            Files.write(exportPath.resolve(ARGUMENTS_FILE_NAME), arguments, StandardCharsets.UTF_8);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void deleteOldExport() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(exportPath,
+                                                                     "{nodes-,relationships-,import.args}*")) {
+            for (final Path path : stream)
+                Files.delete(path);
+        }
+    }
+
+    private static String getFileName(final String prefix, final int index, final String label) {
+        return String.format("%s-%04d-%s", prefix, index, label.replaceAll("[^A-Za-z0-9_-]", "_"));
+    }
+
+    private static String quote(final String argument) {
+        return '"' + argument.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /**
+     * @param includedNodeIds Included node ids, which are collected while exporting nodes and required for the
+     *                        endpoints of exported edges, or {@code null} if the nodes of all labels are exported
+     * @return Comma separated header and data file names of the label
+     */
+    private <T extends MVStoreModel> String exportLabel(final String fileName, final boolean isEdge,
+                                                        final String label, final Iterator<T> iterator,
+                                                        final PropertyConversionPlan conversionPlan,
+                                                        final NodeIdMapping includedNodeIds) throws IOException {
+        final String entityName = isEdge ? "edges" : "nodes";
+        final String headerFileName = fileName + "-header.csv";
+        final String dataFileName = fileName + ".csv.gz";
+        final LabelCsvWriter writer = new LabelCsvWriter(isEdge);
+        long count = 0;
+        long dropped = 0;
+        try (Writer output = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(exportPath.resolve(dataFileName)), BUFFER_SIZE),
+                StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            while (iterator.hasNext()) {
+                final T entity = iterator.next();
+                if (includedNodeIds != null) {
+                    if (!(entity instanceof Edge edge))
+                        includedNodeIds.put(entity.getId(), 0);
+                    else if (includedNodeIds.get(edge.getFromId()) == NodeIdMapping.MISSING ||
+                             includedNodeIds.get(edge.getToId()) == NodeIdMapping.MISSING) {
+                        dropped++;
+                        continue;
+                    }
+                }
+                writer.writeRow(output, entity, conversionPlan);
+                if (++count % PROGRESS_INTERVAL == 0 && LOGGER.isInfoEnabled())
+                    LOGGER.info("\tExported {} {} with label '{}'...", count, entityName, label);
+            }
+        }
+        Files.writeString(exportPath.resolve(headerFileName), writer.getHeader(), StandardCharsets.UTF_8);
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Exported {} {} with label '{}'", count, entityName, label);
+        if (dropped > 0 && LOGGER.isInfoEnabled())
+            LOGGER.info("Dropped {} edges with label '{}' whose nodes are excluded by the label filter", dropped,
+                        label);
+        return headerFileName + "," + dataFileName;
+    }
+
+    private static final class LabelCsvWriter {
+        private final boolean isEdge;
+        private final Map<String, Column> columns = new LinkedHashMap<>();
+        private final StringBuilder line = new StringBuilder();
+        private String[] keys = new String[16];
+        private Object[] values = new Object[16];
+        private Object[] row = new Object[16];
+
+        LabelCsvWriter(final boolean isEdge) {
+            this.isEdge = isEdge;
+        }
+
+        void writeRow(final Writer output, final MVStoreModel entity,
+                      final PropertyConversionPlan conversionPlan) throws IOException {
+            final int size = entity.keySet().size();
+            if (keys.length < size) {
+                keys = new String[size];
+                values = new Object[size];
+            }
+            final int count = conversionPlan.convert(entity, keys, values);
+            Arrays.fill(row, null);
+            line.setLength(0);
+            if (entity instanceof Edge edge)
+                line.append(edge.getFromId()).append(',').append(edge.getToId());
+            else
+                line.append(entity.getId());
+            int lastColumn = -1;
+            for (int i = 0; i < count; i++) {
+                if (isEdge ? isEndpointField(keys[i]) : MVStoreModel.ID_FIELD.equals(keys[i]))
+                    continue;
+                final String type = getType(values[i]);
+                Column column = columns.get(keys[i]);
+                if (column == null) {
+                    column = new Column(columns.size(), type);
+                    columns.put(keys[i], column);
+                    if (row.length <= column.index)
+                        row = Arrays.copyOf(row, row.length * 2);
+                } else
+                    column.type = widen(column.type, type);
+                row[column.index] = values[i];
+                lastColumn = Math.max(lastColumn, column.index);
+            }
+            for (int i = 0; i <= lastColumn; i++) {
+                line.append(',');
+                if (row[i] != null)
+                    appendValue(row[i]);
+            }
+            line.append('\n');
+            output.append(line);
+        }
+
+        /**
+         * The endpoints are written as start and end id columns already, so the edges get the same properties as
+         * in the transactional import.
+         */
+        private static boolean isEndpointField(final String key) {
+            return Edge.FROM_ID_FIELD.equals(key) || Edge.TO_ID_FIELD.equals(key);
+        }
+
+        private void appendValue(final Object value) {
+            if (value.getClass().isArray()) {
+                final int length = Array.getLength(value);
+                final boolean quoted = !value.getClass().getComponentType().isPrimitive();
+                if (quoted)
+                    line.append('"');
+                for (int i = 0; i < length; i++) {
+                    if (i > 0)
+                        line.append(ARRAY_DELIMITER);
+                    final Object element = Array.get(value, i);
+                    if (element != null)
+                        appendUnquoted(element.toString(), quoted);
+                }
+                if (quoted)
+                    line.append('"');
+            } else if (value instanceof Number || value instanceof Boolean)
+                line.append(value);
+            else {
+                line.append('"');
+                appendUnquoted(value.toString(), true);
+                line.append('"');
+            }
+        }
+
+        private void appendUnquoted(final String value, final boolean escapeQuotes) {
+            if (!escapeQuotes || value.indexOf('"') < 0)
+                line.append(value);
+            else
+                line.append(value.replace("\"", "\"\""));
+        }
+
+        String getHeader() {
+            final StringBuilder header = new StringBuilder();
+            header.append(isEdge ? ":START_ID(" + NODE_ID_SPACE + "),:END_ID(" + NODE_ID_SPACE + ")" :
+                          MVStoreModel.ID_FIELD + ":ID(" + NODE_ID_SPACE + ")");
+            for (final Map.Entry<String, Column> entry : columns.entrySet())
+                header.append(',').append(entry.getKey()).append(':').append(entry.getValue().type);
+            return header.append('\n').toString();
+        }
+    }
+
+    private static final class Column {
+        private final int index;
+        private String type;
+
+        Column(final int index, final String type) {
+            this.index = index;
+            this.type = type;
+        }
+    }
+
+    private static String getType(final Object value) {
+        if (value.getClass().isArray()) {
+            final Class<?> componentType = value.getClass().getComponentType();
+            return getScalarType(componentType) + "[]";
+        }
+        return getScalarType(value.getClass());
+    }
+
+    private static String getScalarType(final Class<?> type) {
+        if (type == int.class || type == Integer.class)
+            return "int";
+        if (type == long.class || type == Long.class)
+            return "long";
+        if (type == double.class || type == Double.class)
+            return "double";
+        if (type == float.class || type == Float.class)
+            return "float";
+        if (type == boolean.class || type == Boolean.class)
+            return "boolean";
+        if (type == short.class || type == Short.class)
+            return "short";
+        if (type == byte.class || type == Byte.class)
+            return "byte";
+        return "string";
+    }
+
+    /**
+     * @return Type which can hold the values of both types
+     */
+    static String widen(final String a, final String b) {
+        if (a.equals(b))
+            return a;
+        final boolean arrayA = a.endsWith("[]");
+        final boolean arrayB = b.endsWith("[]");
+        final String suffix = arrayA || arrayB ? "[]" : "";
+        if (arrayA != arrayB)
+            return "string" + suffix;
+        final String scalarA = arrayA ? a.substring(0, a.length() - 2) : a;
+        final String scalarB = arrayB ? b.substring(0, b.length() - 2) : b;
+        final int rankA = getNumericRank(scalarA);
+        final int rankB = getNumericRank(scalarB);
+        if (rankA < 0 || rankB < 0)
+            return "string" + suffix;
+        final boolean floating = rankA >= 4 || rankB >= 4;
+        return (floating ? "double" : "long") + suffix;
+    }
+
+    private static int getNumericRank(final String type) {
+        return switch (type) {
+            case "byte" -> 0;
+            case "short" -> 1;
+            case "int" -> 2;
+            case "long" -> 3;
+            case "float" -> 4;
+            case "double" -> 5;
+            default -> -1;
+        };
+    }
+}
@@ -0,0 +1,201 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.model.graph.Graph;
+import de.unibi.agbi.biodwh2.core.model.graph.IndexDescription;
+import de.unibi.agbi.biodwh2.core.model.graph.Node;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.schema.IndexDefinition;
+import org.neo4j.graphdb.schema.IndexType;
+import org.neo4j.graphdb.schema.Schema;
+
+import java.util.*;
+
+/**
+ * Creates the indexes and constraints of the workspace graph. Range indexes and uniqueness constraints are created
+ * from the node and edge {@link IndexDescription}s of the graph. Node labels with name or synonym properties
+ * additionally get a text index on the name and a full-text index over all name and synonym properties.
+ * <p>
+ * All indexes are created in a single schema transaction, so Neo4j populates them concurrently in one pass over the
+ * store after the commit. {@link #awaitIndexesOnline()} waits for the population and logs its progress.
+ */
+final class Neo4jIndexBuilder {
+    private static final Logger LOGGER = LogManager.getLogger(Neo4jIndexBuilder.class);
+    private static final String TEXT_INDEX_PROPERTY = "name";
+    private static final String[] FULLTEXT_INDEX_PROPERTIES = {"name", "names", "synonyms"};
+    private static final int PROPERTY_SAMPLE_SIZE = 1_000;
+    private static final long PROGRESS_POLL_MILLIS = 1_000;
+    private static final long PROGRESS_LOG_INTERVAL_MILLIS = 10_000;
+
+    private final GraphDatabaseService dbService;
+
+    Neo4jIndexBuilder(final GraphDatabaseService dbService) {
+        this.dbService = dbService;
+    }
+
+    /**
+     * Failures are not caught, so the database creation fails instead of serving a database without indexes.
+     */
+    void createIndices(final Graph graph, final LabelFilter labelFilter) {
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Creating indices...");
+        final List<IndexSpec> specs = new ArrayList<>();
+        for (final IndexDescription index : graph.indexDescriptions()) {
+            final boolean included = index.getTarget() == IndexDescription.Target.NODE ?
+                                     labelFilter.isNodeLabelIncluded(index.getLabel()) :
+                                     labelFilter.isEdgeLabelIncluded(index.getLabel());
+            if (included)
+                specs.add(new IndexSpec(index.getTarget(), index.getLabel(), IndexType.RANGE,
+                                        index.getType() == IndexDescription.Type.UNIQUE, index.getProperty()));
+        }
+        for (final String label : labelFilter.getNodeLabels(graph))
+            addNameIndexSpecs(graph, label, specs);
+        try (Transaction tx = dbService.beginTx()) {
+            final Schema schema = tx.schema();
+            final Set<String> existing = new HashSet<>();
+            for (final IndexDefinition definition : schema.getIndexes())
+                // The default token lookup indexes have no properties and are never created here
+                if (definition.getIndexType() != IndexType.LOOKUP)
+                    existing.add(getKey(definition));
+            for (final IndexSpec spec : specs) {
+                if (!existing.add(spec.getKey()))
+                    continue;
+                if (LOGGER.isInfoEnabled())
+                    LOGGER.info("Creating {} {} index on {} fields for {} label '{}'...",
+                                spec.unique ? "unique" : "non-unique", spec.type, Arrays.toString(spec.properties),
+                                spec.target, spec.label);
+                spec.create(schema);
+            }
+            tx.commit();
+        }
+    }
+
+    private static void addNameIndexSpecs(final Graph graph, final String label, final List<IndexSpec> specs) {
+        final Set<String> fulltextProperties = new TreeSet<>();
+        boolean hasStringName = false;
+        final Iterator<Node> iterator = GraphRepositories.iterateNodes(graph, label);
+        for (int i = 0; i < PROPERTY_SAMPLE_SIZE && iterator.hasNext(); i++) {
+            final Node node = iterator.next();
+            for (final String property : FULLTEXT_INDEX_PROPERTIES)
+                if (node.getProperty(property) != null)
+                    fulltextProperties.add(property);
+            hasStringName |= node.getProperty(TEXT_INDEX_PROPERTY) instanceof String;
+        }
+        if (hasStringName)
+            specs.add(new IndexSpec(IndexDescription.Target.NODE, label, IndexType.TEXT, false,
+                                    TEXT_INDEX_PROPERTY));
+        if (!fulltextProperties.isEmpty())
+            specs.add(new IndexSpec(IndexDescription.Target.NODE, label, IndexType.FULLTEXT, false,
+                                    fulltextProperties.toArray(new String[0])));
+    }
+
+    private static String getKey(final IndexDefinition definition) {
+        final StringBuilder builder = new StringBuilder();
+        if (definition.isNodeIndex()) {
+            builder.append(IndexDescription.Target.NODE);
+            for (final Label label : definition.getLabels())
+                builder.append('|').append(label.name());
+        } else {
+            builder.append(IndexDescription.Target.EDGE);
+            for (final RelationshipType type : definition.getRelationshipTypes())
+                builder.append('|').append(type.name());
+        }
+        builder.append('|').append(definition.getIndexType());
+        for (final String property : definition.getPropertyKeys())
+            builder.append('|').append(property);
+        return builder.toString();
+    }
+
+    /**
+     * Blocks until no index is populating anymore. Failed indexes are logged and do not block.
+     *
+     * @return {@code true} if all indexes are online
+     */
+    boolean awaitIndexesOnline() throws InterruptedException {
+        final Set<String> reportedFailures = new HashSet<>();
+        long lastLogTime = System.currentTimeMillis();
+        while (true) {
+            final List<String> populating = new ArrayList<>();
+            int total = 0;
+            try (Transaction tx = dbService.beginTx()) {
+                final Schema schema = tx.schema();
+                for (final IndexDefinition index : schema.getIndexes()) {
+                    total++;
+                    final Schema.IndexState state = schema.getIndexState(index);
+                    if (state == Schema.IndexState.POPULATING)
+                        populating.add(String.format("%s %.1f%%", index.getName(),
+                                                     schema.getIndexPopulationProgress(index)
+                                                           .getCompletedPercentage()));
+                    else if (state == Schema.IndexState.FAILED && reportedFailures.add(index.getName()) &&
+                             LOGGER.isErrorEnabled())
+                        LOGGER.error("Failed to populate index '{}': {}", index.getName(),
+                                     schema.getIndexFailure(index));
+                }
+            }
+            if (populating.isEmpty()) {
+                if (LOGGER.isInfoEnabled())
+                    LOGGER.info("{} of {} indices online", total - reportedFailures.size(), total);
+                return reportedFailures.isEmpty();
+            }
+            if (System.currentTimeMillis() - lastLogTime >= PROGRESS_LOG_INTERVAL_MILLIS) {
+                lastLogTime = System.currentTimeMillis();
+                if (LOGGER.isInfoEnabled())
+                    LOGGER.info("Populating {} of {} indices: {}", populating.size(), total,
+                                String.join(", ", populating));
+            }
+            //noinspection BusyWait
+            Thread.sleep(PROGRESS_POLL_MILLIS);
+        }
+    }
+
+    private static final class IndexSpec {
+        private final IndexDescription.Target target;
+        private final String label;
+        private final IndexType type;
+        private final boolean unique;
+        private final String[] properties;
+
+        IndexSpec(final IndexDescription.Target target, final String label, final IndexType type,
+                  final boolean unique, final String... properties) {
+            this.target = target;
+            this.label = label;
+            this.type = type;
+            this.unique = unique;
+            this.properties = properties;
+        }
+
+        String getKey() {
+            return target + "|" + label + "|" + type + "|" + String.join("|", properties);
+        }
+
+        void create(final Schema schema) {
+            if (target == IndexDescription.Target.NODE) {
+                final Label nodeLabel = Label.label(label);
+                if (unique)
+                    schema.constraintFor(nodeLabel).withIndexType(type).assertPropertyIsUnique(properties[0])
+                          .create();
+                else {
+                    var creator = schema.indexFor(nodeLabel).withIndexType(type);
+                    for (final String property : properties)
+                        creator = creator.on(property);
+                    creator.create();
+                }
+            } else {
+                final RelationshipType relationshipType = RelationshipType.withName(label);
+                if (unique)
+                    schema.constraintFor(relationshipType).withIndexType(type).assertPropertyIsUnique(
+                            properties[0]).create();
+                else {
+                    var creator = schema.indexFor(relationshipType).withIndexType(type);
+                    for (final String property : properties)
+                        creator = creator.on(property);
+                    creator.create();
+                }
+            }
+        }
+    }
+}
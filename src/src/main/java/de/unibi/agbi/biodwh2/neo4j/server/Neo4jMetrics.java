@@ -0,0 +1,266 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.neo4j.common.DependencyResolver;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.io.pagecache.PageCache;
+import org.neo4j.io.pagecache.monitoring.PageCacheCounters;
+import org.neo4j.kernel.api.exceptions.Status;
+import org.neo4j.kernel.api.net.NetworkConnectionTracker;
+import org.neo4j.kernel.api.net.TrackedNetworkConnection;
+import org.neo4j.kernel.api.query.ExecutingQuery;
+import org.neo4j.kernel.impl.query.QueryExecutionMonitor;
+import org.neo4j.kernel.impl.transaction.stats.TransactionCounters;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.monitoring.Monitors;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Collects runtime metrics of the embedded Neo4j database from its internal monitors and renders them in the
+ * Prometheus text exposition format. Sources which are not available in the running Neo4j version are skipped.
+ */
+final class Neo4jMetrics {
+    private static final Logger LOGGER = LogManager.getLogger(Neo4jMetrics.class);
+    private static final String PREFIX = "biodwh2_neo4j_";
+    private static final String BOLT_WORKER_THREAD_PREFIX = "neo4j.BoltWorker";
+    private static final double[] LATENCY_BUCKETS_SECONDS = {
+            0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300
+    };
+
+    private final GraphDatabaseService dbService;
+    private final PageCache pageCache;
+    private final PageCacheCounters pageCacheCounters;
+    private final TransactionCounters transactionCounters;
+    private final NetworkConnectionTracker connectionTracker;
+    private final Map<ExecutingQuery, Long> runningQueries = new ConcurrentHashMap<>();
+    private final AtomicLongArray queryLatencyBuckets = new AtomicLongArray(LATENCY_BUCKETS_SECONDS.length + 1);
+    private final DoubleAdder queryLatencySum = new DoubleAdder();
+    private final AtomicLong failedQueries = new AtomicLong();
+    private volatile QueryResultCache queryResultCache;
+
+    Neo4jMetrics(final GraphDatabaseService dbService) {
+        this.dbService = dbService;
+        final DependencyResolver resolver = ((GraphDatabaseAPI) dbService).getDependencyResolver();
+        pageCache = resolve(resolver, PageCache.class);
+        pageCacheCounters = resolve(resolver, PageCacheCounters.class);
+        transactionCounters = resolve(resolver, TransactionCounters.class);
+        connectionTracker = resolve(resolver, NetworkConnectionTracker.class);
+        final Monitors monitors = resolve(resolver, Monitors.class);
+        if (monitors != null)
+            monitors.addMonitorListener(new QueryLatencyMonitor());
+    }
+
+    private static <T> T resolve(final DependencyResolver resolver, final Class<T> type) {
+        try {
+            return resolver.resolveDependency(type);
+        } catch (RuntimeException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Metrics source '{}' is not available", type.getSimpleName());
+            return null;
+        }
+    }
+
+    private final class QueryLatencyMonitor implements QueryExecutionMonitor {
+        @Override
+        public void startProcessing(final ExecutingQuery query) {
+            runningQueries.put(query, System.nanoTime());
+        }
+
+        @Override
+        public void endFailure(final ExecutingQuery query, final Throwable failure) {
+            end(query, false);
+        }
+
+        @Override
+        public void endFailure(final ExecutingQuery query, final String reason, final Status status) {
+            end(query, false);
+        }
+
+        @Override
+        public void endSuccess(final ExecutingQuery query) {
+            end(query, true);
+        }
+
+        private void end(final ExecutingQuery query, final boolean success) {
+            final Long start = runningQueries.remove(query);
+            if (!success)
+                failedQueries.incrementAndGet();
+            if (start == null)
+                return;
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS_SECONDS.length && seconds > LATENCY_BUCKETS_SECONDS[bucket])
+                bucket++;
+            queryLatencyBuckets.incrementAndGet(bucket);
+            queryLatencySum.add(seconds);
+        }
+    }
+
+    /**
+     * @param queryResultCache Result cache of the /cypher endpoint or {@code null} if caching is disabled
+     */
+    void setQueryResultCache(final QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    boolean isDatabaseAvailable() {
+        return dbService.isAvailable();
+    }
+
+    /**
+     * @param ready Whether the database is online and all indexes are populated
+     */
+    String scrape(final boolean ready) {
+        final StringBuilder builder = new StringBuilder();
+        gauge(builder, "ready", "Whether the store is online and all indexes are populated", ready ? 1 : 0);
+        gauge(builder, "database_available", "Whether the database accepts transactions",
+              isDatabaseAvailable() ? 1 : 0);
+        appendPageCacheMetrics(builder);
+        appendTransactionMetrics(builder);
+        appendBoltMetrics(builder);
+        appendQueryMetrics(builder);
+        appendQueryCacheMetrics(builder);
+        appendJvmMetrics(builder);
+        return builder.toString();
+    }
+
+    private void appendPageCacheMetrics(final StringBuilder builder) {
+        if (pageCache != null)
+            gauge(builder, "page_cache_size_bytes", "Configured page cache size",
+                  pageCache.maxCachedPages() * pageCache.pageSize());
+        if (pageCacheCounters == null)
+            return;
+        counter(builder, "page_cache_hits_total", "Page cache hits", pageCacheCounters.hits());
+        counter(builder, "page_cache_faults_total", "Page cache faults", pageCacheCounters.faults());
+        counter(builder, "page_cache_evictions_total", "Page cache evictions", pageCacheCounters.evictions());
+        counter(builder, "page_cache_pins_total", "Page cache pins", pageCacheCounters.pins());
+        counter(builder, "page_cache_flushes_total", "Page cache flushes", pageCacheCounters.flushes());
+        counter(builder, "page_cache_read_bytes_total", "Bytes read into the page cache",
+                pageCacheCounters.bytesRead());
+        counter(builder, "page_cache_written_bytes_total", "Bytes written from the page cache",
+                pageCacheCounters.bytesWritten());
+        gauge(builder, "page_cache_hit_ratio", "Ratio of page cache hits to all page cache accesses",
+              pageCacheCounters.hitRatio());
+        gauge(builder, "page_cache_usage_ratio", "Ratio of used to available pages in the page cache",
+              pageCacheCounters.usageRatio());
+    }
+
+    private void appendTransactionMetrics(final StringBuilder builder) {
+        if (transactionCounters == null)
+            return;
+        counter(builder, "transactions_started_total", "Started transactions",
+                transactionCounters.getNumberOfStartedTransactions());
+        counter(builder, "transactions_committed_total", "Committed transactions",
+                transactionCounters.getNumberOfCommittedTransactions());
+        counter(builder, "transactions_rolled_back_total", "Rolled back transactions",
+                transactionCounters.getNumberOfRolledBackTransactions());
+        counter(builder, "transactions_terminated_total", "Terminated transactions",
+                transactionCounters.getNumberOfTerminatedTransactions());
+        gauge(builder, "transactions_active", "Active transactions",
+              transactionCounters.getNumberOfActiveTransactions());
+        gauge(builder, "transactions_active_read", "Active read transactions",
+              transactionCounters.getNumberOfActiveReadTransactions());
+        gauge(builder, "transactions_peak_concurrent", "Peak number of concurrent transactions",
+              transactionCounters.getPeakConcurrentNumberOfTransactions());
+    }
+
+    private void appendBoltMetrics(final StringBuilder builder) {
+        if (connectionTracker != null) {
+            long boltConnections = 0;
+            for (final TrackedNetworkConnection connection : connectionTracker.activeConnections())
+                if ("bolt".equalsIgnoreCase(connection.connector()))
+                    boltConnections++;
+            gauge(builder, "bolt_connections_open", "Open Bolt connections", boltConnections);
+        }
+        long workers = 0;
+        long busyWorkers = 0;
+        // Thread infos without stack traces, so a scrape does not capture the stacks of all threads
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        for (final ThreadInfo info : threadBean.getThreadInfo(threadBean.getAllThreadIds(), 0)) {
+            if (info != null && info.getThreadName().startsWith(BOLT_WORKER_THREAD_PREFIX)) {
+                workers++;
+                if (info.getThreadState() == Thread.State.RUNNABLE)
+                    busyWorkers++;
+            }
+        }
+        gauge(builder, "bolt_worker_threads", "Bolt worker threads in the thread pool", workers);
+        gauge(builder, "bolt_worker_threads_busy", "Bolt worker threads currently running", busyWorkers);
+    }
+
+    private void appendQueryMetrics(final StringBuilder builder) {
+        gauge(builder, "queries_running", "Currently running queries", runningQueries.size());
+        counter(builder, "queries_failed_total", "Failed queries", failedQueries.get());
+        final String name = PREFIX + "query_duration_seconds";
+        builder.append("# HELP ").append(name).append(" Query execution time\n");
+        builder.append("# TYPE ").append(name).append(" histogram\n");
+        long cumulative = 0;
+        for (int i = 0; i < LATENCY_BUCKETS_SECONDS.length; i++) {
+            cumulative += queryLatencyBuckets.get(i);
+            builder.append(name).append("_bucket{le=\"").append(format(LATENCY_BUCKETS_SECONDS[i])).append("\"} ")
+                   .append(cumulative).append('\n');
+        }
+        cumulative += queryLatencyBuckets.get(LATENCY_BUCKETS_SECONDS.length);
+        builder.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        builder.append(name).append("_sum ").append(format(queryLatencySum.sum())).append('\n');
+        builder.append(name).append("_count ").append(cumulative).append('\n');
+    }
+
+    private void appendQueryCacheMetrics(final StringBuilder builder) {
+        final QueryResultCache cache = queryResultCache;
+        if (cache == null)
+            return;
+        final Map<String, Long> statistics = cache.getStatistics();
+        gauge(builder, "query_cache_entries", "Cached /cypher results", statistics.get("entries"));
+        gauge(builder, "query_cache_size_bytes", "Size of the cached /cypher results", statistics.get("sizeBytes"));
+        gauge(builder, "query_cache_capacity_bytes", "Capacity of the /cypher result cache",
+              statistics.get("capacityBytes"));
+        counter(builder, "query_cache_hits_total", "/cypher requests answered from the cache", statistics.get("hits"));
+        counter(builder, "query_cache_misses_total", "/cypher requests not found in the cache",
+                statistics.get("misses"));
+    }
+
+    private static void appendJvmMetrics(final StringBuilder builder) {
+        final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        gauge(builder, "jvm_heap_used_bytes", "Used heap memory", heap.getUsed());
+        gauge(builder, "jvm_heap_max_bytes", "Maximum heap memory", heap.getMax());
+        long gcMillis = 0;
+        for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            gcMillis += Math.max(0, bean.getCollectionTime());
+        counter(builder, "jvm_gc_pause_seconds_total", "Accumulated garbage collection time", gcMillis / 1000.0);
+        gauge(builder, "jvm_threads", "Live threads", ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    private static void gauge(final StringBuilder builder, final String name, final String help,
+                              final double value) {
+        metric(builder, name, help, "gauge", value);
+    }
+
+    private static void counter(final StringBuilder builder, final String name, final String help,
+                                final double value) {
+        metric(builder, name, help, "counter", value);
+    }
+
+    private static void metric(final StringBuilder builder, final String name, final String help, final String type,
+                               final double value) {
+        builder.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+        builder.append(PREFIX).append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(final double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value))
+            return Long.toString((long) value);
+        return Double.toString(value);
+    }
+}
@@ -12,6 +12,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class Neo4jServer {
     private static final Logger LOGGER = LoggerFactory.getLogger(Neo4jServer.class);
@@ -32,14 +35,19 @@ public class Neo4jServer {
     }
 
     private void run(final CmdArgs commandLine) {
-        BioDWH2Updater.checkForUpdate("BioDWH2-Neo4j-Server",
-                                      "https://api.github.com/repos/BioDWH2/BioDWH2-Neo4j-Server/releases");
+        if (!commandLine.offline)
+            BioDWH2Updater.checkForUpdate("BioDWH2-Neo4j-Server",
+                                          "https://api.github.com/repos/BioDWH2/BioDWH2-Neo4j-Server/releases");
         if (commandLine.createStart != null)
             createAndStartWorkspaceServer(commandLine);
         else if (commandLine.start != null)
             startWorkspaceServer(commandLine);
         else if (commandLine.create != null)
             createWorkspaceDatabase(commandLine);
+        else if (commandLine.update != null)
+            updateWorkspaceDatabase(commandLine);
+        else if (commandLine.exportCsv != null)
+            exportWorkspaceCsv(commandLine);
         else
             printHelp(commandLine);
     }
@@ -50,14 +58,95 @@ public class Neo4jServer {
             printHelp(commandLine);
             return;
         }
-        final Neo4jService service = new Neo4jService(workspacePath);
-        service.deleteOldDatabase();
-        service.startNeo4jService(commandLine.boltPort);
-        service.createDatabase();
-        storeWorkspaceHash(workspacePath);
-        final Neo4jBrowser browser = new Neo4jBrowser(workspacePath);
+        final String workspaceHash = getWorkspaceHashOrNull(workspacePath);
+        if (workspaceHash == null)
+            return;
+        final Neo4jService service = new Neo4jService(workspacePath, commandLine);
+        if (!createDatabase(service, workspacePath, workspaceHash, commandLine)) {
+            LOGGER.error("Failed to create the neo4j database. Shutting down...");
+            service.shutdown();
+            return;
+        }
+        storeWorkspaceHash(service, workspacePath, workspaceHash);
+        final Neo4jBrowser browser = new Neo4jBrowser(workspacePath, commandLine);
         if (browser.downloadNeo4jBrowser())
-            browser.startNeo4jBrowser(commandLine.port);
+            browser.startNeo4jBrowser(commandLine.port, service);
+    }
+
+    /**
+     * @param workspaceHash Content hash of the workspace graph, which keys the import checkpoint and the snapshots
+     * @return {@code true} if the database was created successfully
+     */
+    private boolean createDatabase(final Neo4jService service, final String workspacePath,
+                                   final String workspaceHash, final CmdArgs commandLine) {
+        // The previous checksum must not mark a partially created database as up-to-date
+        deleteWorkspaceHash(workspacePath);
+        final boolean success;
+        if (canResumeDatabase(service, workspaceHash, commandLine)) {
+            service.startNeo4jService(commandLine.boltPort, MemoryPlanner.Phase.CREATE);
+            success = service.resumeDatabase(workspaceHash);
+        } else {
+            service.deleteOldDatabase();
+            if (service.restoreSnapshot(workspaceHash)) {
+                if (commandLine.createStart != null) {
+                    service.startNeo4jService(commandLine.boltPort, MemoryPlanner.Phase.SERVE);
+                    service.awaitIndexes();
+                }
+                return true;
+            }
+            if (commandLine.bulkImport) {
+                if (!service.bulkImportDatabase())
+                    return false;
+                service.startNeo4jService(commandLine.boltPort, MemoryPlanner.Phase.CREATE);
+                success = service.createIndices();
+            } else {
+                service.startNeo4jService(commandLine.boltPort, MemoryPlanner.Phase.CREATE);
+                success = service.createDatabase(workspaceHash);
+            }
+        }
+        if (!success)
+            return false;
+        final boolean storeSnapshot = service.isSnapshotCacheEnabled();
+        // Only --create-start serves the database afterward, the other commands shut down right away. Serving must
+        // not keep the create memory plan with its unbounded transaction state and without page cache warm-up.
+        if (storeSnapshot || commandLine.createStart != null) {
+            // The store files are only consistent while the database is shut down
+            service.shutdown();
+            if (storeSnapshot)
+                service.storeSnapshot(workspaceHash);
+            if (commandLine.createStart != null) {
+                service.startNeo4jService(commandLine.boltPort, MemoryPlanner.Phase.SERVE);
+                service.awaitIndexes();
+            }
+        }
+        return true;
+    }
+
+    private boolean canResumeDatabase(final Neo4jService service, final String workspaceHash,
+                                      final CmdArgs commandLine) {
+        if (!commandLine.resume)
+            return false;
+        if (commandLine.bulkImport) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Bulk imports cannot be resumed, recreating the neo4j database...");
+            return false;
+        }
+        if (!service.canResumeDatabase(workspaceHash)) {
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info("No import checkpoint found for the workspace, recreating the neo4j database...");
+            return false;
+        }
+        return true;
+    }
+
+    private String getWorkspaceHashOrNull(final String workspacePath) {
+        try {
+            return getWorkspaceHash(workspacePath);
+        } catch (IOException e) {
+            if (LOGGER.isErrorEnabled())
+                LOGGER.error("Failed to hash workspace mapped graph", e);
+            return null;
+        }
     }
 
     private boolean verifyWorkspaceExists(final String workspacePath) {
@@ -75,15 +164,28 @@ public class Neo4jServer {
         CommandLine.usage(commandLine, System.out);
     }
 
-    private void storeWorkspaceHash(final String workspacePath) {
+    /**
+     * Stores the workspace hash in the first line of the checksum file, followed by one line per imported label
+     * fingerprint in the format {@code <key>\t<fingerprint>}. Nothing is stored while an import checkpoint exists, as
+     * the database creation was not completed then.
+     */
+    private void storeWorkspaceHash(final Neo4jService service, final String workspacePath,
+                                    final String workspaceHash) {
+        if (service.hasImportCheckpoint()) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Import checkpoint still exists, not updating workspace neo4j cache checksum");
+            return;
+        }
+        final Map<String, String> labelFingerprints = service.getLabelFingerprints();
         if (LOGGER.isInfoEnabled())
             LOGGER.info("Updating workspace neo4j cache checksum...");
         final Path hashFilePath = Paths.get(workspacePath, "neo4j/checksum.txt");
         try {
-            final String hash = HashUtils.getFastPseudoHashFromFile(
-                    Paths.get(workspacePath, "sources/mapped.db").toString());
             final FileWriter writer = new FileWriter(hashFilePath.toFile());
-            writer.write(hash);
+            writer.write(workspaceHash);
+            if (labelFingerprints != null)
+                for (final Map.Entry<String, String> entry : labelFingerprints.entrySet())
+                    writer.write("\n" + entry.getKey() + "\t" + entry.getValue());
             writer.close();
         } catch (IOException e) {
             if (LOGGER.isErrorEnabled())
@@ -91,6 +193,39 @@ public class Neo4jServer {
         }
     }
 
+    private void deleteWorkspaceHash(final String workspacePath) {
+        try {
+            Files.deleteIfExists(Paths.get(workspacePath, "neo4j/checksum.txt"));
+        } catch (IOException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to remove workspace neo4j cache checksum", e);
+        }
+    }
+
+    private String getWorkspaceHash(final String workspacePath) throws IOException {
+        return HashUtils.getContentFingerprintFromFile(Paths.get(workspacePath, "sources/mapped.db").toString(),
+                                                       Paths.get(workspacePath, "neo4j/fingerprint-cache.txt"));
+    }
+
+    private Map<String, String> loadLabelFingerprints(final String workspacePath) {
+        final Map<String, String> labelFingerprints = new HashMap<>();
+        final Path hashFilePath = Paths.get(workspacePath, "neo4j/checksum.txt");
+        try {
+            if (Files.exists(hashFilePath)) {
+                final List<String> lines = Files.readAllLines(hashFilePath);
+                for (int i = 1; i < lines.size(); i++) {
+                    final String[] parts = StringUtils.split(lines.get(i), '\t');
+                    if (parts.length == 2)
+                        labelFingerprints.put(parts[0], parts[1]);
+                }
+            }
+        } catch (IOException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to load label fingerprints of workspace mapped graph", e);
+        }
+        return labelFingerprints;
+    }
+
     private void startWorkspaceServer(final CmdArgs commandLine) {
         final String workspacePath = commandLine.start;
         if (!verifyWorkspaceExists(workspacePath)) {
@@ -99,21 +234,23 @@ public class Neo4jServer {
         }
         if (!checkNeo4jDatabaseMatchesWorkspace(workspacePath) && LOGGER.isInfoEnabled())
             LOGGER.warn("The neo4j database is out-of-date and should be recreated with the --create command");
-        final Neo4jService service = new Neo4jService(workspacePath);
-        service.startNeo4jService(commandLine.boltPort);
-        final Neo4jBrowser browser = new Neo4jBrowser(workspacePath);
+        final Neo4jService service = new Neo4jService(workspacePath, commandLine);
+        service.startNeo4jService(commandLine.boltPort, MemoryPlanner.Phase.SERVE);
+        final Neo4jBrowser browser = new Neo4jBrowser(workspacePath, commandLine);
         if (browser.downloadNeo4jBrowser())
-            browser.startNeo4jBrowser(commandLine.port);
+            browser.startNeo4jBrowser(commandLine.port, service);
+        // The health endpoint reports ready once the page cache is warm and the indexes are populated
+        service.warmUpPageCache();
+        service.awaitIndexes();
     }
 
     private boolean checkNeo4jDatabaseMatchesWorkspace(final String workspacePath) {
         try {
-            final String hash = HashUtils.getFastPseudoHashFromFile(
-                    Paths.get(workspacePath, "sources/mapped.db").toString());
+            final String hash = getWorkspaceHash(workspacePath);
             final Path hashFilePath = Paths.get(workspacePath, "neo4j/checksum.txt");
             if (Files.exists(hashFilePath)) {
-                final String storedHash = new String(Files.readAllBytes(hashFilePath)).trim();
-                return hash.equals(storedHash);
+                final List<String> lines = Files.readAllLines(hashFilePath);
+                return !lines.isEmpty() && hash.equals(lines.get(0).trim());
             }
         } catch (IOException e) {
             if (LOGGER.isWarnEnabled())
@@ -128,12 +265,56 @@ public class Neo4jServer {
             printHelp(commandLine);
             return;
         }
-        final Neo4jService service = new Neo4jService(workspacePath);
-        service.deleteOldDatabase();
-        service.startNeo4jService(commandLine.boltPort);
-        service.createDatabase();
-        storeWorkspaceHash(workspacePath);
-        LOGGER.info("Neo4j database successfully created. Shutting down...");
+        final String workspaceHash = getWorkspaceHashOrNull(workspacePath);
+        if (workspaceHash == null)
+            return;
+        final Neo4jService service = new Neo4jService(workspacePath, commandLine);
+        if (createDatabase(service, workspacePath, workspaceHash, commandLine)) {
+            storeWorkspaceHash(service, workspacePath, workspaceHash);
+            LOGGER.info("Neo4j database successfully created. Shutting down...");
+        } else
+            LOGGER.error("Failed to create the neo4j database. Shutting down...");
+        service.shutdown();
+    }
+
+    private void updateWorkspaceDatabase(final CmdArgs commandLine) {
+        final String workspacePath = commandLine.update;
+        if (!verifyWorkspaceExists(workspacePath)) {
+            printHelp(commandLine);
+            return;
+        }
+        final String workspaceHash = getWorkspaceHashOrNull(workspacePath);
+        if (workspaceHash == null)
+            return;
+        final Neo4jService service = new Neo4jService(workspacePath, commandLine);
+        final Map<String, String> previousFingerprints = loadLabelFingerprints(workspacePath);
+        final boolean success;
+        if (!service.databaseExists() || previousFingerprints.isEmpty()) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("No previous label fingerprints found, recreating the neo4j database...");
+            success = createDatabase(service, workspacePath, workspaceHash, commandLine);
+        } else {
+            service.startNeo4jService(commandLine.boltPort, MemoryPlanner.Phase.CREATE);
+            success = service.updateDatabase(previousFingerprints);
+        }
+        if (success) {
+            storeWorkspaceHash(service, workspacePath, workspaceHash);
+            LOGGER.info("Neo4j database successfully updated. Shutting down...");
+        } else
+            LOGGER.error("Failed to update the neo4j database. Shutting down...");
         service.shutdown();
     }
+
+    private void exportWorkspaceCsv(final CmdArgs commandLine) {
+        final String workspacePath = commandLine.exportCsv;
+        if (!verifyWorkspaceExists(workspacePath)) {
+            printHelp(commandLine);
+            return;
+        }
+        final Neo4jService service = new Neo4jService(workspacePath, commandLine);
+        if (service.exportCsv() && LOGGER.isInfoEnabled())
+            LOGGER.info("CSV export successfully written to '" + service.getImportPath() +
+                        "'. Import it from within this directory using 'neo4j-admin database import full @" +
+                        Neo4jCsvExporter.ARGUMENTS_FILE_NAME + " <database>'");
+    }
 }
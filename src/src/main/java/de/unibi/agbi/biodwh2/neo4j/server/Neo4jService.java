@@ -1,13 +1,10 @@
 package de.unibi.agbi.biodwh2.neo4j.server;
 
-import de.unibi.agbi.biodwh2.core.collections.BatchIterable;
-import de.unibi.agbi.biodwh2.core.collections.Tuple2;
-import de.unibi.agbi.biodwh2.core.io.mvstore.MVStoreCollection;
 import de.unibi.agbi.biodwh2.core.io.mvstore.MVStoreModel;
 import de.unibi.agbi.biodwh2.core.model.graph.Edge;
 import de.unibi.agbi.biodwh2.core.model.graph.Graph;
-import de.unibi.agbi.biodwh2.core.model.graph.IndexDescription;
 import de.unibi.agbi.biodwh2.core.model.graph.Node;
+import de.unibi.agbi.biodwh2.neo4j.server.model.CmdArgs;
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -22,65 +19,96 @@ import org.neo4j.dbms.api.DatabaseManagementService;
 import org.neo4j.dbms.api.DatabaseManagementServiceBuilder;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.config.Setting;
-import org.neo4j.graphdb.schema.IndexType;
-import org.neo4j.graphdb.schema.Schema;
 import org.neo4j.kernel.api.procedure.GlobalProcedures;
+import org.neo4j.kernel.impl.coreapi.InternalTransaction;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.memory.MemoryTracker;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class Neo4jService {
     private static final Logger LOGGER = LogManager.getLogger(Neo4jService.class);
     private static final Setting<Boolean> bolt_ssl_policy = SettingImpl.newBuilder("dbms.ssl.policy.bolt.enabled",
                                                                                    SettingValueParsers.BOOL, false)
                                                                        .build();
+    private static final int EDGE_CHUNK_SIZE = 500_000;
+    private static final int DELETE_BATCH_SIZE = 10_000;
+    private static final int MAX_EDGE_BATCH_ATTEMPTS = 5;
+    private static final long EDGE_BATCH_RETRY_DELAY_MILLIS = 200;
 
     private final String workspacePath;
     private final String neo4jPath;
     private final Path databasePath;
     private final String importPath;
+    private final int workerCount;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long maxTransactionBytes;
+    private final boolean memoryReport;
+    private final LabelFilter labelFilter;
+    private final int boltThreads;
+    private final int boltMinThreads;
+    private final Duration boltThreadKeepAlive;
+    private final Duration boltConnectionKeepAlive;
+    private final boolean warmUp;
+    private final StoreSnapshotCache snapshotCache;
     private DatabaseManagementService managementService;
     private GraphDatabaseService dbService;
-    private Method getOrCreateNodeRepository;
-    private Method getOrCreateEdgeRepository;
+    private Neo4jMetrics metrics;
+    private PageCacheWarmer pageCacheWarmer;
+    private Map<String, String> labelFingerprints;
+    private volatile boolean ready;
+    private volatile ImportMetrics importMetrics;
 
-    public Neo4jService(final String workspacePath) {
+    public Neo4jService(final String workspacePath, final CmdArgs commandLine) {
         this.workspacePath = workspacePath;
         neo4jPath = Paths.get(workspacePath, "neo4j").toString();
         databasePath = Paths.get(neo4jPath, "neo4j.db");
         importPath = Paths.get(neo4jPath, "import").toString();
-
-        try {
-            getOrCreateNodeRepository = Graph.class.getSuperclass().getDeclaredMethod("getOrCreateNodeRepository",
-                                                                                      String.class);
-            getOrCreateNodeRepository.setAccessible(true);
-            getOrCreateEdgeRepository = Graph.class.getSuperclass().getDeclaredMethod("getOrCreateEdgeRepository",
-                                                                                      String.class);
-            getOrCreateEdgeRepository.setAccessible(true);
-        } catch (NoSuchMethodException ignored) {
-            getOrCreateNodeRepository = null;
-            getOrCreateEdgeRepository = null;
-        }
+        workerCount = commandLine.workers != null && commandLine.workers > 0 ? commandLine.workers :
+                      Runtime.getRuntime().availableProcessors();
+        minBatchSize = commandLine.minBatchSize;
+        maxBatchSize = commandLine.maxBatchSize;
+        maxTransactionBytes = commandLine.maxTransactionMemory * 1024L * 1024L;
+        memoryReport = commandLine.memoryReport;
+        labelFilter = LabelFilter.fromCommandLine(commandLine);
+        boltThreads = Math.max(1, commandLine.boltThreads);
+        boltMinThreads = Math.max(1, Math.min(commandLine.boltMinThreads, boltThreads));
+        boltThreadKeepAlive = Duration.ofSeconds(commandLine.boltThreadKeepAlive);
+        boltConnectionKeepAlive = Duration.ofSeconds(commandLine.boltConnectionKeepAlive);
+        warmUp = commandLine.warmUp;
+        snapshotCache = commandLine.snapshotDir != null ? new StoreSnapshotCache(Paths.get(commandLine.snapshotDir)) :
+                        null;
     }
 
-    public void startNeo4jService(final Integer boltPort) {
+    public void startNeo4jService(final Integer boltPort, final MemoryPlanner.Phase phase) {
         Paths.get(neo4jPath).toFile().mkdir();
         Paths.get(importPath).toFile().mkdir();
         var boltListenAddress = new SocketAddress("0.0.0.0", boltPort == null ? 8083 : boltPort);
         if (LOGGER.isInfoEnabled())
             LOGGER.info("Starting Neo4j DBMS on bolt://{}...", boltListenAddress);
+        final MemoryPlanner.Plan memoryPlan = MemoryPlanner.plan(phase, Paths.get(workspacePath, "sources/mapped.db"),
+                                                                 databasePath, workerCount, maxTransactionBytes,
+                                                                 labelFilter);
+        if (memoryReport && LOGGER.isInfoEnabled())
+            LOGGER.info("Memory plan report:\n{}", memoryPlan.getReport());
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Using memory plan for the {}", memoryPlan.getSummary());
         final var builder = new DatabaseManagementServiceBuilder(databasePath);
-        builder.setConfig(GraphDatabaseSettings.pagecache_memory, 512 * 1024L);
+        memoryPlan.apply(builder);
         builder.setConfig(HttpConnector.enabled, false);
         builder.setConfig(HttpsConnector.enabled, false);
         builder.setConfig(BoltConnector.enabled, true);
         builder.setConfig(BoltConnector.listen_address, boltListenAddress);
         builder.setConfig(BoltConnector.encryption_level, BoltConnector.EncryptionLevel.DISABLED);
+        configureBoltWorkers(builder);
         builder.setConfig(bolt_ssl_policy, false);
         builder.setConfig(GraphDatabaseSettings.auth_enabled, false);
         builder.setConfig(GraphDatabaseSettings.procedure_unrestricted, Collections.singletonList("apoc.*"));
@@ -91,14 +119,61 @@ class Neo4jService {
         // builder.set(SettingImpl.newBuilder("apoc.export.file.enabled", SettingValueParsers.BOOL, false).build(), true);
         managementService = builder.build();
         dbService = managementService.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME);
-        Runtime.getRuntime().addShutdownHook(new Thread(managementService::shutdown));
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+        metrics = new Neo4jMetrics(dbService);
+        // The page cache profile only reflects the queries served, not the reads of an import
+        pageCacheWarmer = phase == MemoryPlanner.Phase.SERVE ? new PageCacheWarmer(
+                dbService, databasePath, Paths.get(neo4jPath, PageCacheWarmer.PROFILE_FILE_NAME), workerCount) : null;
         registerApocProceduresAndFunctions();
     }
 
+    /**
+     * Sizes the Bolt worker pool for many concurrent long-running read queries. Every running query occupies a
+     * worker thread, so the pool has to be large enough for all concurrent clients, and idle threads are kept long
+     * enough to not be recreated between bursts of queries.
+     */
+    private void configureBoltWorkers(final DatabaseManagementServiceBuilder builder) {
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Using {}-{} Bolt worker threads", boltMinThreads, boltThreads);
+        builder.setConfig(BoltConnector.thread_pool_min_size, boltMinThreads);
+        builder.setConfig(BoltConnector.thread_pool_max_size, boltThreads);
+        builder.setConfig(BoltConnector.thread_pool_keep_alive, boltThreadKeepAlive);
+        builder.setConfig(BoltConnector.connection_keep_alive, boltConnectionKeepAlive);
+    }
+
     private void registerApocProceduresAndFunctions() {
         final GlobalProcedures procedures = ((GraphDatabaseAPI) dbService).getDependencyResolver().resolveDependency(
                 GlobalProcedures.class);
-        final List<Class<?>> apocClasses = Factory.getInstance().loadAllClasses("apoc.");
+        final Map<ApocIndex.Kind, List<Class<?>>> indexedClasses = ApocIndex.load();
+        if (indexedClasses == null) {
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info("No APOC index found, scanning the classpath for APOC procedures and functions...");
+            registerApocProceduresAndFunctions(procedures, Factory.getInstance().loadAllClasses("apoc."));
+            return;
+        }
+        for (final Class<?> proc : indexedClasses.get(ApocIndex.Kind.PROCEDURE))
+            registerApocClass(proc, () -> procedures.registerProcedure(proc));
+        for (final Class<?> proc : indexedClasses.get(ApocIndex.Kind.FUNCTION))
+            registerApocClass(proc, () -> procedures.registerFunction(proc));
+        for (final Class<?> proc : indexedClasses.get(ApocIndex.Kind.AGGREGATION_FUNCTION))
+            registerApocClass(proc, () -> procedures.registerAggregationFunction(proc));
+    }
+
+    private interface ApocRegistration {
+        void register() throws Exception;
+    }
+
+    private static void registerApocClass(final Class<?> proc, final ApocRegistration registration) {
+        try {
+            registration.register();
+        } catch (Throwable e) {
+            if (LOGGER.isDebugEnabled())
+                LOGGER.debug("Failed to register APOC class '{}'", proc.getName(), e);
+        }
+    }
+
+    private static void registerApocProceduresAndFunctions(final GlobalProcedures procedures,
+                                                           final List<Class<?>> apocClasses) {
         apocClasses.forEach((proc) -> {
             try {
                 procedures.registerProcedure(proc);
@@ -123,193 +198,779 @@ class Neo4jService {
             FileUtils.deleteDirectory(Paths.get(neo4jPath, "logs").toFile());
             FileUtils.deleteDirectory(databasePath.toFile());
             FileUtils.deleteQuietly(Paths.get(neo4jPath, "store_lock").toFile());
+            ImportCheckpoint.delete(getCheckpointPath());
         } catch (IOException e) {
             if (LOGGER.isErrorEnabled())
                 LOGGER.error("Failed to remove old database '{}'", neo4jPath, e);
         }
     }
 
-    public void shutdown() {
-        managementService.shutdown();
+    public boolean isSnapshotCacheEnabled() {
+        return snapshotCache != null;
+    }
+
+    /**
+     * Replaces the database with the snapshot of a previous import of the same workspace and label filter.
+     *
+     * @return {@code true} if a matching snapshot was restored
+     */
+    public boolean restoreSnapshot(final String workspaceHash) {
+        if (snapshotCache == null)
+            return false;
+        final Map<String, String> restoredFingerprints = snapshotCache.restore(
+                StoreSnapshotCache.getKey(workspaceHash, labelFilter), databasePath);
+        if (restoredFingerprints == null)
+            return false;
+        labelFingerprints = restoredFingerprints;
+        return true;
+    }
+
+    /**
+     * Stores a snapshot of the database after a successful import. The database has to be shut down.
+     */
+    public void storeSnapshot(final String workspaceHash) {
+        if (snapshotCache != null && labelFingerprints != null)
+            snapshotCache.store(StoreSnapshotCache.getKey(workspaceHash, labelFilter), databasePath,
+                                labelFingerprints);
     }
 
-    public void createDatabase() {
+    public synchronized void shutdown() {
+        ready = false;
+        if (pageCacheWarmer != null) {
+            pageCacheWarmer.recordProfile();
+            pageCacheWarmer = null;
+        }
+        if (managementService != null) {
+            managementService.shutdown();
+            managementService = null;
+        }
+    }
+
+    /**
+     * Preloads the store files into the page cache if the warm-up was requested.
+     */
+    public void warmUpPageCache() {
+        final PageCacheWarmer warmer = pageCacheWarmer;
+        if (!warmUp || warmer == null)
+            return;
+        try {
+            warmer.warmUp();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to warm up page cache", e);
+        }
+    }
+
+    /**
+     * @param workspaceHash Content hash of the workspace graph, which keys the import checkpoint
+     * @return {@code true} if the database was created successfully
+     */
+    public boolean createDatabase(final String workspaceHash) {
+        return importDatabase(workspaceHash, false);
+    }
+
+    /**
+     * Continues an interrupted database creation from its import checkpoint. Completed labels are skipped and the
+     * other labels continue after their committed offset. The node id mapping is rebuilt from the id property of the
+     * existing nodes, which is also used to skip entities committed after the committed offset.
+     *
+     * @param workspaceHash Content hash of the workspace graph, which keys the import checkpoint
+     * @return {@code true} if the database creation was completed successfully
+     */
+    public boolean resumeDatabase(final String workspaceHash) {
+        return importDatabase(workspaceHash, true);
+    }
+
+    /**
+     * @return {@code true} if the database exists and has an import checkpoint of the current workspace graph and
+     * label filter
+     */
+    public boolean canResumeDatabase(final String workspaceHash) {
+        return databaseExists() && ImportCheckpoint.exists(getCheckpointPath(), getCheckpointKey(workspaceHash));
+    }
+
+    /**
+     * @return {@code true} if an import checkpoint exists, so the database creation has not been completed
+     */
+    public boolean hasImportCheckpoint() {
+        return Files.exists(getCheckpointPath());
+    }
+
+    private Path getCheckpointPath() {
+        return Paths.get(neo4jPath, ImportCheckpoint.FILE_NAME);
+    }
+
+    private String getCheckpointKey(final String workspaceHash) {
+        return workspaceHash + "\t" + labelFilter;
+    }
+
+    private boolean importDatabase(final String workspaceHash, final boolean resume) {
         if (LOGGER.isInfoEnabled())
-            LOGGER.info("Creating Neo4j database...");
+            LOGGER.info(resume ? "Resuming creation of Neo4j database..." : "Creating Neo4j database...");
+        logLabelFilter();
         try (Graph graph = new Graph(Paths.get(workspacePath, "sources/mapped.db"), true, true)) {
-            final HashMap<Long, String> nodeIdNeo4jIdMap = createNeo4jNodes(graph);
-            createNeo4jEdges(graph, nodeIdNeo4jIdMap);
+            final String[] nodeLabels = labelFilter.getNodeLabels(graph);
+            final String[] edgeLabels = labelFilter.getEdgeLabels(graph);
+            startImportMetrics(resume ? "resume" : "create", graph, Arrays.asList(nodeLabels),
+                               Arrays.asList(edgeLabels));
+            final String checkpointKey = getCheckpointKey(workspaceHash);
+            final ImportCheckpoint loadedCheckpoint = resume ? ImportCheckpoint.load(getCheckpointPath(),
+                                                                                     checkpointKey) : null;
+            if (resume && loadedCheckpoint == null)
+                throw new IOException("No import checkpoint found for the workspace graph");
+            final LabelFingerprints.Tracker fingerprints = new LabelFingerprints.Tracker();
+            try (ImportCheckpoint checkpoint = resume ? loadedCheckpoint : ImportCheckpoint.create(
+                    getCheckpointPath(), checkpointKey); NodeIdMapping nodeIdMapping = createNodeIdMapping(graph)) {
+                if (resume)
+                    loadNodeIdMapping(nodeIdMapping);
+                createNeo4jNodes(graph, Arrays.asList(nodeLabels), nodeIdMapping, checkpoint, fingerprints);
+                checkpoint.save();
+                createNeo4jEdges(graph, Arrays.asList(edgeLabels), nodeIdMapping, checkpoint, fingerprints);
+            }
+            importMetrics.setPhase("indices");
             createNeo4jIndices(graph);
+            // Labels completed before a resumed import was interrupted were not streamed again
+            fingerprints.computeMissing(graph, nodeLabels, edgeLabels);
+            labelFingerprints = fingerprints.getFingerprints();
+            ImportCheckpoint.delete(getCheckpointPath());
+            return true;
         } catch (Exception e) {
             if (LOGGER.isErrorEnabled())
                 LOGGER.error("Failed to create neo4j database '{}'", databasePath, e);
+        } finally {
+            finishImportMetrics();
         }
+        return false;
     }
 
-    private HashMap<Long, String> createNeo4jNodes(final Graph graph) {
-        final HashMap<Long, String> nodeIdNeo4jIdMap = new HashMap<>();
-        final String[] labels = graph.getNodeLabels();
-        for (int i = 0; i < labels.length; i++) {
-            if (LOGGER.isInfoEnabled())
-                LOGGER.info("Creating nodes with label '{}' ({}/{})...", labels[i], i + 1, labels.length);
-            final var nodes = getNodes(graph, labels[i]);
-            while (nodes.getFirst().hasNext()) {
-                try (Transaction tx = dbService.beginTx()) {
-                    for (final Node node : nodes.getSecond()) {
-                        final org.neo4j.graphdb.Node neo4jNode = tx.createNode();
-                        for (final String propertyKey : node.keySet())
-                            setPropertySafe(node, neo4jNode, propertyKey);
-                        nodeIdNeo4jIdMap.put(node.getId(), neo4jNode.getElementId());
-                        neo4jNode.addLabel(Label.label(node.getLabel()));
-                    }
-                    tx.commit();
+    private void startImportMetrics(final String operation, final Graph graph, final Collection<String> nodeLabels,
+                                    final Collection<String> edgeLabels) {
+        long expectedNodes = 0;
+        for (final String label : nodeLabels)
+            expectedNodes += graph.getNumberOfNodes(label);
+        long expectedEdges = 0;
+        for (final String label : edgeLabels)
+            expectedEdges += graph.getNumberOfEdges(label);
+        importMetrics = ImportMetrics.start(operation, workerCount, expectedNodes, expectedEdges);
+    }
+
+    /**
+     * Writes the performance report of the import next to the checksum file.
+     */
+    private void finishImportMetrics() {
+        final ImportMetrics metrics = importMetrics;
+        importMetrics = null;
+        if (metrics != null)
+            metrics.finish(Paths.get(neo4jPath, "import-report.json"));
+    }
+
+    private void logLabelFilter() {
+        if (!labelFilter.isEmpty() && LOGGER.isInfoEnabled())
+            LOGGER.info("Using label filter {}", labelFilter);
+    }
+
+    public boolean databaseExists() {
+        return databasePath.toFile().exists();
+    }
+
+    /**
+     * Fingerprints of the imported graph labels or {@code null} if no import took place.
+     */
+    public Map<String, String> getLabelFingerprints() {
+        return labelFingerprints;
+    }
+
+    /**
+     * Updates the database incrementally. Only node and edge labels whose fingerprint differs from the previous
+     * import are deleted and imported again. Edge labels connected to reimported node labels are reimported as well,
+     * as deleting the nodes also removes their relationships.
+     *
+     * @return {@code true} if the database was updated successfully
+     */
+    public boolean updateDatabase(final Map<String, String> previousFingerprints) {
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Updating Neo4j database...");
+        logLabelFilter();
+        try (Graph graph = new Graph(Paths.get(workspacePath, "sources/mapped.db"), true, true)) {
+            final Map<String, String> fingerprints = LabelFingerprints.compute(graph, labelFilter);
+            final Set<String> nodeLabels = LabelFingerprints.getChangedLabels(previousFingerprints, fingerprints,
+                                                                              LabelFingerprints.NODE_PREFIX);
+            final Set<String> edgeLabels = LabelFingerprints.getChangedLabels(previousFingerprints, fingerprints,
+                                                                              LabelFingerprints.EDGE_PREFIX);
+            final Set<String> deletedNodeLabels = LabelFingerprints.getRemovedLabels(previousFingerprints,
+                                                                                     fingerprints,
+                                                                                     LabelFingerprints.NODE_PREFIX);
+            final Set<String> deletedEdgeLabels = LabelFingerprints.getRemovedLabels(previousFingerprints,
+                                                                                     fingerprints,
+                                                                                     LabelFingerprints.EDGE_PREFIX);
+            deletedNodeLabels.addAll(nodeLabels);
+            for (final String edgeLabel : labelFilter.getEdgeLabels(graph))
+                if (!edgeLabels.contains(edgeLabel) && isConnectedToAnyLabel(edgeLabel, deletedNodeLabels))
+                    edgeLabels.add(edgeLabel);
+            deletedEdgeLabels.addAll(edgeLabels);
+            if (deletedNodeLabels.isEmpty() && deletedEdgeLabels.isEmpty()) {
+                if (LOGGER.isInfoEnabled())
+                    LOGGER.info("Neo4j database is already up-to-date");
+            } else {
+                if (LOGGER.isInfoEnabled())
+                    LOGGER.info("Reimporting {} node labels {} and {} edge labels {}...", nodeLabels.size(),
+                                nodeLabels, edgeLabels.size(), edgeLabels);
+                for (final String edgeLabel : deletedEdgeLabels)
+                    deleteInBatches("MATCH ()-[r:" + escapeName(edgeLabel) + "]->() WITH r LIMIT " +
+                                    DELETE_BATCH_SIZE + " DELETE r RETURN count(*) AS count", edgeLabel);
+                for (final String nodeLabel : deletedNodeLabels)
+                    deleteInBatches("MATCH (n:" + escapeName(nodeLabel) + ") WITH n LIMIT " + DELETE_BATCH_SIZE +
+                                    " DETACH DELETE n RETURN count(*) AS count", nodeLabel);
+                startImportMetrics("update", graph, nodeLabels, edgeLabels);
+                try (NodeIdMapping nodeIdMapping = createNodeIdMapping(graph)) {
+                    loadNodeIdMapping(nodeIdMapping);
+                    createNeo4jNodes(graph, nodeLabels, nodeIdMapping);
+                    createNeo4jEdges(graph, edgeLabels, nodeIdMapping);
                 }
+                importMetrics.setPhase("indices");
             }
+            createNeo4jIndices(graph);
+            labelFingerprints = fingerprints;
+            return true;
+        } catch (Exception e) {
+            if (LOGGER.isErrorEnabled())
+                LOGGER.error("Failed to update neo4j database '{}'", databasePath, e);
+        } finally {
+            finishImportMetrics();
         }
-        return nodeIdNeo4jIdMap;
+        return false;
     }
 
-    private Tuple2<Iterator<Node>, BatchIterable<Node>> getNodes(final Graph graph, final String label) {
-        if (getOrCreateNodeRepository != null) {
-            try {
-                //noinspection unchecked
-                final var collection = (MVStoreCollection<Node>) getOrCreateNodeRepository.invoke(graph, label);
-                final var iterator = collection.unsafeIterator();
-                return new Tuple2<>(iterator, new BatchIterable<>(iterator));
-            } catch (IllegalAccessException | InvocationTargetException ignored) {
+    private static String escapeName(final String name) {
+        return '`' + name.replace("`", "``") + '`';
+    }
+
+    /**
+     * Checks using the counts store whether any relationship of the type starts or ends at a node with one of the
+     * labels.
+     */
+    private boolean isConnectedToAnyLabel(final String relationshipType, final Set<String> labels) {
+        try (Transaction tx = dbService.beginTx()) {
+            for (final String label : labels) {
+                final String type = escapeName(relationshipType);
+                final String node = escapeName(label);
+                final String query = "MATCH (:" + node + ")-[r:" + type + "]->() RETURN count(r) AS count UNION ALL " +
+                                     "MATCH ()-[r:" + type + "]->(:" + node + ") RETURN count(r) AS count";
+                try (ResourceIterator<Number> counts = tx.execute(query).columnAs("count")) {
+                    while (counts.hasNext())
+                        if (counts.next().longValue() > 0)
+                            return true;
+                }
             }
         }
-        final var iterator = graph.getNodes(label).iterator();
-        return new Tuple2<>(iterator, new BatchIterable<>(iterator));
+        return false;
     }
 
-    private Tuple2<Iterator<Edge>, BatchIterable<Edge>> getEdges(final Graph graph, final String label) {
-        if (getOrCreateEdgeRepository != null) {
-            try {
-                //noinspection unchecked
-                final var collection = (MVStoreCollection<Edge>) getOrCreateEdgeRepository.invoke(graph, label);
-                final var iterator = collection.unsafeIterator();
-                return new Tuple2<>(iterator, new BatchIterable<>(iterator));
-            } catch (IllegalAccessException | InvocationTargetException ignored) {
+    private void deleteInBatches(final String query, final String label) {
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Deleting entities with label '{}'...", label);
+        long deleted;
+        do {
+            try (Transaction tx = dbService.beginTx()) {
+                try (ResourceIterator<Number> counts = tx.execute(query).columnAs("count")) {
+                    deleted = counts.next().longValue();
+                }
+                tx.commit();
+            }
+        } while (deleted > 0);
+    }
+
+    /**
+     * Fills the mapping from the BioDWH2 node ids stored in the id property of all existing nodes.
+     */
+    @SuppressWarnings({"deprecation", "removal"})
+    private void loadNodeIdMapping(final NodeIdMapping nodeIdMapping) {
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Loading node id mapping of existing nodes...");
+        try (Transaction tx = dbService.beginTx();
+             ResourceIterable<org.neo4j.graphdb.Node> nodes = tx.getAllNodes()) {
+            for (final org.neo4j.graphdb.Node node : nodes) {
+                final Object nodeId = node.getProperty(MVStoreModel.ID_FIELD, null);
+                if (nodeId instanceof Number)
+                    nodeIdMapping.put(((Number) nodeId).longValue(), node.getId());
             }
         }
-        final var iterator = graph.getEdges(label).iterator();
-        return new Tuple2<>(iterator, new BatchIterable<>(iterator));
     }
 
-    private void setPropertySafe(final Node node, final org.neo4j.graphdb.Node neo4jNode, final String propertyKey) {
-        try {
-            if (MVStoreModel.ID_FIELD.equals(propertyKey) || !Node.IGNORED_FIELDS.contains(propertyKey)) {
-                Object value = node.getProperty(propertyKey);
-                if (value instanceof Integer[] array)
-                    for (int i = 0; i < array.length; i++)
-                        array[i] = array[i] == null ? -1 : array[i];
-                if (value instanceof Long[] array)
-                    for (int i = 0; i < array.length; i++)
-                        array[i] = array[i] == null ? -1 : array[i];
-                if (value instanceof Collection)
-                    value = convertCollectionToArray((Collection<?>) value);
-                if (value instanceof Enum<?>)
-                    value = value.toString();
-                if (value != null)
-                    neo4jNode.setProperty(propertyKey, value);
+    /**
+     * @return {@code true} if the bulk import succeeded
+     */
+    public boolean bulkImportDatabase() {
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Bulk importing Neo4j database...");
+        logLabelFilter();
+        Paths.get(neo4jPath).toFile().mkdir();
+        try (Graph graph = new Graph(Paths.get(workspacePath, "sources/mapped.db"), true, true)) {
+            startImportMetrics("bulk-import", graph, Arrays.asList(labelFilter.getNodeLabels(graph)),
+                               Arrays.asList(labelFilter.getEdgeLabels(graph)));
+            final LabelFingerprints.Tracker fingerprints = new LabelFingerprints.Tracker();
+            new Neo4jBulkImporter(databasePath, Paths.get(neo4jPath, "bulk-import-bad-entries.log"),
+                                  Paths.get(neo4jPath, "node-ids"), labelFilter).importGraph(graph, fingerprints,
+                                                                                             importMetrics);
+            labelFingerprints = fingerprints.getFingerprints();
+            return true;
+        } catch (Exception e) {
+            if (LOGGER.isErrorEnabled())
+                LOGGER.error("Failed to bulk import neo4j database '{}'", databasePath, e);
+        } finally {
+            finishImportMetrics();
+        }
+        return false;
+    }
+
+    /**
+     * Exports the workspace graph into the import directory for an offline import with neo4j-admin.
+     *
+     * @return {@code true} if the export succeeded
+     */
+    public boolean exportCsv() {
+        logLabelFilter();
+        try (Graph graph = new Graph(Paths.get(workspacePath, "sources/mapped.db"), true, true)) {
+            new Neo4jCsvExporter(Paths.get(importPath), Paths.get(neo4jPath, "node-ids"), workerCount,
+                                 labelFilter).export(graph);
+            return true;
+        } catch (Exception e) {
+            if (LOGGER.isErrorEnabled())
+                LOGGER.error("Failed to export workspace graph to '{}'", importPath, e);
+        }
+        return false;
+    }
+
+    public String getImportPath() {
+        return importPath;
+    }
+
+    /**
+     * @return {@code true} if the indices were created successfully
+     */
+    public boolean createIndices() {
+        try (Graph graph = new Graph(Paths.get(workspacePath, "sources/mapped.db"), true, true)) {
+            createNeo4jIndices(graph);
+            return true;
+        } catch (Exception e) {
+            if (LOGGER.isErrorEnabled())
+                LOGGER.error("Failed to create neo4j indices", e);
+        }
+        return false;
+    }
+
+    private NodeIdMapping createNodeIdMapping(final Graph graph) throws IOException {
+        return new NodeIdMapping(graph.getNumberOfNodes(), Paths.get(neo4jPath, "node-ids"),
+                                 Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    void createNeo4jNodes(final Graph graph, final Collection<String> labels,
+                          final NodeIdMapping nodeIdMapping) throws InterruptedException, ExecutionException {
+        createNeo4jNodes(graph, labels, nodeIdMapping, null, null);
+    }
+
+    /**
+     * @param checkpoint   Checkpoint tracking the progress or {@code null}
+     * @param fingerprints Tracker of the label fingerprints or {@code null}
+     */
+    private void createNeo4jNodes(final Graph graph, final Collection<String> labels,
+                                  final NodeIdMapping nodeIdMapping, final ImportCheckpoint checkpoint,
+                                  final LabelFingerprints.Tracker fingerprints) throws InterruptedException, ExecutionException {
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Creating nodes with {} labels using {} workers...", labels.size(), workerCount);
+        final Queue<LabelBatchSource<Node>> sources = new ConcurrentLinkedQueue<>();
+        for (final String label : labels) {
+            if (checkpoint != null && checkpoint.isCompleted("nodes", label))
+                continue;
+            final long offset = checkpoint != null ? checkpoint.getCommittedOffset("nodes", label) : 0;
+            Iterator<Node> iterator = GraphRepositories.iterateNodes(graph, label);
+            if (fingerprints != null)
+                iterator = fingerprints.trackNodes(label, iterator);
+            final LabelBatchSource<Node> source = new LabelBatchSource<>(
+                    "nodes", label, skip(iterator, offset),
+                    graph.getNumberOfNodes(label), PropertyConversionPlan.forNodeLabel(label), offset);
+            sources.add(source);
+            if (checkpoint != null)
+                checkpoint.addSource(source);
+        }
+        // When resuming, nodes committed after the committed offset of their label are already in the mapping
+        final boolean skipExisting = checkpoint != null && checkpoint.isResumed();
+        final ImportPipeline<ImportBatch<Node>, ImportBatch<Node>> pipeline = new ImportPipeline<>("node-import",
+                                                                                                  getQueueCapacity());
+        registerImportMetrics("nodes", sources, pipeline);
+        pipeline.run(createReaders(sources), getConverterCount(),
+                     Neo4jService::convertBatch, workerCount,
+                     (batch) -> createNeo4jNodeBatch(batch, nodeIdMapping, skipExisting));
+    }
+
+    private static <T> Iterator<T> skip(final Iterator<T> iterator, final long count) {
+        for (long i = 0; i < count && iterator.hasNext(); i++)
+            iterator.next();
+        return iterator;
+    }
+
+    private void registerImportMetrics(final String phase, final Collection<? extends LabelBatchSource<?>> sources,
+                                       final ImportPipeline<?, ?> pipeline) {
+        final ImportMetrics metrics = importMetrics;
+        if (metrics != null) {
+            metrics.setPhase(phase);
+            sources.forEach(metrics::addSource);
+            metrics.addPipeline(pipeline);
+        }
+    }
+
+    private <T extends MVStoreModel> List<ImportPipeline.Reader<ImportBatch<T>>> createReaders(
+            final Queue<LabelBatchSource<T>> sources) {
+        final int readerCount = Math.max(1, Math.min(sources.size(), workerCount / 4));
+        final List<ImportPipeline.Reader<ImportBatch<T>>> readers = new ArrayList<>(readerCount);
+        for (int i = 0; i < readerCount; i++)
+            readers.add((sink) -> {
+                LabelBatchSource<T> source;
+                while ((source = sources.poll()) != null) {
+                    final AdaptiveBatchSizer batchSizer = createBatchSizer();
+                    // Each source is read by a single reader, so the offsets of its batches are consecutive
+                    long offset = source.getStartOffset();
+                    List<T> entities;
+                    while (!(entities = source.nextBatch(batchSizer.getBatchSize())).isEmpty()) {
+                        sink.accept(new ImportBatch<>(source, offset, batchSizer, entities));
+                        offset += entities.size();
+                    }
+                }
+            });
+        return readers;
+    }
+
+    private int getConverterCount() {
+        return Math.max(1, workerCount / 2);
+    }
+
+    private int getQueueCapacity() {
+        return 4 * workerCount;
+    }
+
+    private static <T extends MVStoreModel> ImportBatch<T> convertBatch(final ImportBatch<T> batch) {
+        final PropertyConversionPlan conversionPlan = batch.source.getConversionPlan();
+        for (int i = 0; i < batch.size(); i++) {
+            final T entity = batch.entities.get(i);
+            final int size = entity.keySet().size();
+            final String[] keys = new String[size];
+            final Object[] values = new Object[size];
+            final int count = conversionPlan.convert(entity, keys, values);
+            batch.propertyKeys[i] = count == size ? keys : Arrays.copyOf(keys, count);
+            batch.propertyValues[i] = count == size ? values : Arrays.copyOf(values, count);
+        }
+        return batch;
+    }
+
+    @SuppressWarnings({"deprecation", "removal"})
+    private void createNeo4jNodeBatch(final ImportBatch<Node> batch, final NodeIdMapping nodeIdMapping,
+                                      final boolean skipExisting) {
+        final Label label = batch.source.getConversionPlan().getLabel();
+        try (Transaction tx = dbService.beginTx()) {
+            for (int i = 0; i < batch.size(); i++) {
+                if (skipExisting && nodeIdMapping.get(batch.entities.get(i).getId()) != NodeIdMapping.MISSING)
+                    continue;
+                final org.neo4j.graphdb.Node neo4jNode = tx.createNode(label);
+                setPropertiesSafe(batch, i, neo4jNode);
+                nodeIdMapping.put(batch.entities.get(i).getId(), neo4jNode.getId());
             }
-        } catch (IllegalArgumentException e) {
-            if (LOGGER.isWarnEnabled())
-                LOGGER.warn("Illegal property '{}' -> '{}' for node '{}[:{}]'", propertyKey,
-                            node.getProperty(propertyKey), node.getId(), node.getLabel(), e);
+            commitMeasured(tx, batch.size(), batch.batchSizer);
         }
+        batch.completed();
     }
 
-    @SuppressWarnings({"SuspiciousToArrayCall"})
-    private Object convertCollectionToArray(final Collection<?> collection) {
-        Class<?> type = null;
-        for (Object t : collection) {
-            if (t != null) {
-                type = t.getClass();
-                break;
+    private static void setPropertiesSafe(final ImportBatch<?> batch, final int index, final Entity entity) {
+        final String[] keys = batch.propertyKeys[index];
+        final Object[] values = batch.propertyValues[index];
+        for (int i = 0; i < keys.length; i++) {
+            try {
+                entity.setProperty(keys[i], values[i]);
+            } catch (IllegalArgumentException e) {
+                if (LOGGER.isWarnEnabled())
+                    LOGGER.warn("Illegal property '{}' -> '{}' for '{}[:{}]'", keys[i], values[i],
+                                batch.entities.get(index).getId(), batch.getLabel(), e);
             }
         }
-        if (type != null) {
-            if (type.equals(String.class))
-                return collection.stream().map(type::cast).toArray(String[]::new);
-            if (type.equals(Boolean.class))
-                return collection.stream().map(type::cast).toArray(Boolean[]::new);
-            if (type.equals(Integer.class))
-                return collection.stream().map(type::cast).toArray(Integer[]::new);
-            if (type.equals(Float.class))
-                return collection.stream().map(type::cast).toArray(Float[]::new);
-            if (type.equals(Long.class))
-                return collection.stream().map(type::cast).toArray(Long[]::new);
-            if (type.equals(Double.class))
-                return collection.stream().map(type::cast).toArray(Double[]::new);
-            if (type.equals(Byte.class))
-                return collection.stream().map(type::cast).toArray(Byte[]::new);
-            if (type.equals(Short.class))
-                return collection.stream().map(type::cast).toArray(Short[]::new);
+    }
+
+    private AdaptiveBatchSizer createBatchSizer() {
+        return new AdaptiveBatchSizer(minBatchSize, maxBatchSize, maxTransactionBytes);
+    }
+
+    /**
+     * Commits the transaction and reports its transaction state memory and commit latency to the batch sizer and
+     * the import metrics.
+     */
+    private void commitMeasured(final Transaction tx, final int count, final AdaptiveBatchSizer batchSizer) {
+        final MemoryTracker memoryTracker = ((InternalTransaction) tx).kernelTransaction().memoryTracker();
+        final long transactionBytes = memoryTracker.estimatedHeapMemory() + memoryTracker.usedNativeMemory();
+        final long start = System.nanoTime();
+        tx.commit();
+        final long commitNanos = System.nanoTime() - start;
+        batchSizer.record(count, transactionBytes, commitNanos);
+        final ImportMetrics metrics = importMetrics;
+        if (metrics != null)
+            metrics.recordCommit(commitNanos);
+    }
+
+    private ExecutorService createExecutor(final String threadName) {
+        final AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(workerCount, (runnable) -> {
+            final Thread thread = new Thread(runnable, threadName + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static void runAll(final ExecutorService executor, final List<Runnable> tasks) throws InterruptedException,
+                                                                                                 ExecutionException {
+        final List<Future<?>> futures = new ArrayList<>(tasks.size());
+        for (final Runnable task : tasks)
+            futures.add(executor.submit(task));
+        for (final Future<?> future : futures)
+            future.get();
+    }
+
+    void createNeo4jEdges(final Graph graph, final Collection<String> labels,
+                          final NodeIdMapping nodeIdMapping) throws InterruptedException, ExecutionException,
+                                                                    IOException {
+        createNeo4jEdges(graph, labels, nodeIdMapping, null, null);
+    }
+
+    /**
+     * @param checkpoint   Checkpoint tracking the progress or {@code null}
+     * @param fingerprints Tracker of the label fingerprints or {@code null}
+     */
+    private void createNeo4jEdges(final Graph graph, final Collection<String> labels,
+                                  final NodeIdMapping nodeIdMapping, final ImportCheckpoint checkpoint,
+                                  final LabelFingerprints.Tracker fingerprints) throws InterruptedException, ExecutionException,
+                                                                            IOException {
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Creating edges with {} labels using {} workers...", labels.size(), workerCount);
+        final Queue<LabelBatchSource<Edge>> sources = new ConcurrentLinkedQueue<>();
+        for (final String label : labels) {
+            if (checkpoint != null && checkpoint.isCompleted("edges", label))
+                continue;
+            final long offset = checkpoint != null ? checkpoint.getCommittedOffset("edges", label) : 0;
+            Iterator<Edge> iterator = GraphRepositories.iterateEdges(graph, label);
+            if (fingerprints != null)
+                iterator = fingerprints.trackEdges(label, iterator);
+            final LabelBatchSource<Edge> source = new LabelBatchSource<>(
+                    "edges", label, skip(iterator, offset),
+                    graph.getNumberOfEdges(label), PropertyConversionPlan.forEdgeLabel(label), offset);
+            sources.add(source);
+            if (checkpoint != null)
+                checkpoint.addSource(source);
+        }
+        final EdgePartitionSchedule schedule = new EdgePartitionSchedule(workerCount);
+        final ExecutorService executor = createExecutor("edge-write");
+        try (NodeIdMapping existingEdgeIds = checkpoint != null && checkpoint.isResumed() ? loadEdgeIdMapping(
+                sources) : null) {
+            final ImportPipeline<ImportBatch<Edge>, ImportBatch<Edge>> pipeline = new ImportPipeline<>(
+                    "edge-import", getQueueCapacity());
+            registerImportMetrics("edges", sources, pipeline);
+            // A single writer collects the converted batches into chunks, which are then written by the executor
+            // threads in the deadlock-free rounds of the partition schedule.
+            pipeline.run(createReaders(sources), getConverterCount(),
+                         (batch) -> convertEdgeBatch(batch, nodeIdMapping, existingEdgeIds), 1,
+                         new ImportPipeline.Writer<>() {
+                        private final List<ImportBatch<Edge>> chunk = new ArrayList<>();
+                        private int chunkSize;
+
+                        @Override
+                        public void write(final ImportBatch<Edge> batch) throws Exception {
+                            chunk.add(batch);
+                            chunkSize += batch.size();
+                            if (chunkSize >= EDGE_CHUNK_SIZE)
+                                finish();
+                        }
+
+                        @Override
+                        public void finish() throws Exception {
+                            createNeo4jEdgeChunk(chunk, schedule, executor);
+                            chunk.clear();
+                            chunkSize = 0;
+                        }
+                    });
+        } finally {
+            executor.shutdownNow();
         }
-        return collection.stream().map(Object::toString).toArray(String[]::new);
     }
 
-    private void createNeo4jEdges(final Graph graph, final HashMap<Long, String> nodeIdNeo4jIdMap) {
-        final String[] labels = graph.getEdgeLabels();
-        for (int i = 0; i < labels.length; i++) {
+    /**
+     * Maps the BioDWH2 edge ids stored in the id property of the existing relationships of the labels to their Neo4j
+     * relationship ids, so edges committed after the committed offset of their label before the import was
+     * interrupted are not created twice. The mapping is sized from the relationship counts of the labels.
+     */
+    @SuppressWarnings({"deprecation", "removal"})
+    private NodeIdMapping loadEdgeIdMapping(final Collection<LabelBatchSource<Edge>> sources) throws IOException {
+        try (Transaction tx = dbService.beginTx()) {
+            long existingEdges = 0;
+            for (final LabelBatchSource<Edge> source : sources)
+                existingEdges += countRelationships(tx, source.getConversionPlan().getRelationshipType().name());
             if (LOGGER.isInfoEnabled())
-                LOGGER.info("Creating edges with label '{}' ({}/{})...", labels[i], i + 1, labels.length);
-            final long edgeCount = graph.getNumberOfEdges(labels[i]);
-            final long[] counter = {0};
-            final var edges = getEdges(graph, labels[i]);
-            while (edges.getFirst().hasNext()) {
-                try (final Transaction tx = dbService.beginTx()) {
-                    for (final Edge edge : edges.getSecond()) {
-                        final RelationshipType relationshipType = RelationshipType.withName(edge.getLabel());
-                        final var fromNode = tx.getNodeByElementId(nodeIdNeo4jIdMap.get(edge.getFromId()));
-                        final var toNode = tx.getNodeByElementId(nodeIdNeo4jIdMap.get(edge.getToId()));
-                        final Relationship relationship = fromNode.createRelationshipTo(toNode, relationshipType);
-                        for (final String propertyKey : edge.keySet())
-                            if (MVStoreModel.ID_FIELD.equals(propertyKey) || !Edge.IGNORED_FIELDS.contains(
-                                    propertyKey)) {
-                                Object value = edge.getProperty(propertyKey);
-                                if (value instanceof Collection)
-                                    value = convertCollectionToArray((Collection<?>) value);
-                                if (value != null)
-                                    relationship.setProperty(propertyKey, value);
-                            }
-                        counter[0]++;
-                        if (counter[0] % 100_000 == 0)
-                            LOGGER.info("\tProgress: {}/{}...", counter[0], edgeCount);
+                LOGGER.info("Loading edge id mapping of {} existing relationships...", existingEdges);
+            final NodeIdMapping edgeIdMapping = new NodeIdMapping(existingEdges, Paths.get(neo4jPath, "edge-ids"),
+                                                                  Runtime.getRuntime().maxMemory() / 4);
+            for (final LabelBatchSource<Edge> source : sources) {
+                final RelationshipType type = source.getConversionPlan().getRelationshipType();
+                try (ResourceIterator<Relationship> relationships = tx.findRelationships(type)) {
+                    while (relationships.hasNext()) {
+                        final Relationship relationship = relationships.next();
+                        final Object edgeId = relationship.getProperty(MVStoreModel.ID_FIELD, null);
+                        if (edgeId instanceof Number)
+                            edgeIdMapping.put(((Number) edgeId).longValue(), relationship.getId());
                     }
-                    tx.commit();
                 }
             }
+            return edgeIdMapping;
         }
     }
 
-    private void createNeo4jIndices(final Graph graph) {
-        if (LOGGER.isInfoEnabled())
-            LOGGER.info("Creating indices...");
-        final IndexDescription[] indices = graph.indexDescriptions();
-        try (Transaction tx = dbService.beginTx()) {
-            final Schema schema = tx.schema();
-            for (final IndexDescription index : indices) {
-                if (LOGGER.isInfoEnabled())
-                    LOGGER.info("Creating {} index on '{}' field for {} label '{}'...", index.getType(),
-                                index.getProperty(), index.getTarget(), index.getLabel());
-                final Label label = Label.label(index.getLabel());
-                if (index.getTarget() == IndexDescription.Target.NODE) {
-                    if (index.getType() == IndexDescription.Type.UNIQUE)
-                        schema.constraintFor(label).withIndexType(IndexType.RANGE).assertPropertyIsUnique(
-                                index.getProperty()).create();
-                    else
-                        schema.indexFor(label).withIndexType(IndexType.RANGE).on(index.getProperty()).create();
-                } else {
-                    // TODO
+    /**
+     * Counts the relationships of the type using the counts store.
+     */
+    private static long countRelationships(final Transaction tx, final String relationshipType) {
+        final String query = "MATCH ()-[r:" + escapeName(relationshipType) + "]->() RETURN count(r) AS count";
+        try (ResourceIterator<Number> counts = tx.execute(query).columnAs("count")) {
+            return counts.next().longValue();
+        }
+    }
+
+    /**
+     * @param existingEdgeIds Mapping of the edges existing already or {@code null}
+     */
+    private static ImportBatch<Edge> convertEdgeBatch(final ImportBatch<Edge> batch, final NodeIdMapping nodeIdMapping,
+                                                      final NodeIdMapping existingEdgeIds) {
+        convertBatch(batch);
+        batch.endpointIds = new long[batch.size() * 2];
+        for (int i = 0; i < batch.size(); i++) {
+            final Edge edge = batch.entities.get(i);
+            if (existingEdgeIds != null && existingEdgeIds.get(edge.getId()) != NodeIdMapping.MISSING) {
+                batch.endpointIds[i * 2] = ImportBatch.EXISTING_EDGE;
+                batch.endpointIds[i * 2 + 1] = ImportBatch.EXISTING_EDGE;
+                continue;
+            }
+            batch.endpointIds[i * 2] = nodeIdMapping.get(edge.getFromId());
+            batch.endpointIds[i * 2 + 1] = nodeIdMapping.get(edge.getToId());
+        }
+        return batch;
+    }
+
+    private void createNeo4jEdgeChunk(final List<ImportBatch<Edge>> chunk, final EdgePartitionSchedule schedule,
+                                      final ExecutorService executor) throws InterruptedException,
+                                                                             ExecutionException {
+        final EdgePartitionSchedule.Bucket[] buckets = schedule.partition(chunk);
+        for (final int[] round : schedule.getRounds()) {
+            final List<Runnable> tasks = new ArrayList<>();
+            for (final int bucketIndex : round) {
+                final EdgePartitionSchedule.Bucket bucket = buckets[bucketIndex];
+                if (bucket != null)
+                    tasks.add(() -> createNeo4jEdgeBucket(bucket));
+            }
+            runAll(executor, tasks);
+        }
+        for (final ImportBatch<Edge> batch : chunk)
+            batch.completed();
+    }
+
+    /**
+     * Writes the edges of a bucket in transactions sized by the batch sizer of their label. A transaction never
+     * spans edges of different labels.
+     */
+    private void createNeo4jEdgeBucket(final EdgePartitionSchedule.Bucket bucket) {
+        int offset = 0;
+        while (offset < bucket.size()) {
+            final AdaptiveBatchSizer batchSizer = bucket.getBatch(offset).batchSizer;
+            final int limit = Math.min(bucket.size(), offset + batchSizer.getBatchSize());
+            int end = offset + 1;
+            while (end < limit && bucket.getBatch(end).batchSizer == batchSizer)
+                end++;
+            createNeo4jEdgeBatchWithRetry(bucket, offset, end, batchSizer);
+            offset = end;
+        }
+    }
+
+    private void createNeo4jEdgeBatchWithRetry(final EdgePartitionSchedule.Bucket bucket, final int offset,
+                                               final int end, final AdaptiveBatchSizer batchSizer) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                createNeo4jEdgeBatch(bucket, offset, end, batchSizer);
+                return;
+            } catch (TransientFailureException e) {
+                if (attempt >= MAX_EDGE_BATCH_ATTEMPTS)
+                    throw e;
+                if (LOGGER.isWarnEnabled())
+                    LOGGER.warn("Retrying batch of '{}' edges after transient failure (attempt {}/{}): {}",
+                                bucket.getBatch(offset).getLabel(), attempt, MAX_EDGE_BATCH_ATTEMPTS,
+                                e.getMessage());
+                try {
+                    Thread.sleep(EDGE_BATCH_RETRY_DELAY_MILLIS * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
                 }
             }
-            tx.commit();
-        } catch (Exception e) {
-            if (LOGGER.isErrorEnabled())
-                LOGGER.error("Failed to create neo4j indices", e);
         }
     }
+
+    @SuppressWarnings({"deprecation", "removal"})
+    private void createNeo4jEdgeBatch(final EdgePartitionSchedule.Bucket bucket, final int offset, final int end,
+                                      final AdaptiveBatchSizer batchSizer) {
+        final RelationshipType relationshipType = bucket.getBatch(offset).source.getConversionPlan()
+                                                        .getRelationshipType();
+        try (final Transaction tx = dbService.beginTx()) {
+            for (int i = offset; i < end; i++) {
+                final ImportBatch<Edge> batch = bucket.getBatch(i);
+                final int index = bucket.getIndex(i);
+                final var fromNode = tx.getNodeById(batch.endpointIds[index * 2]);
+                final var toNode = tx.getNodeById(batch.endpointIds[index * 2 + 1]);
+                final Relationship relationship = fromNode.createRelationshipTo(toNode, relationshipType);
+                setPropertiesSafe(batch, index, relationship);
+            }
+            commitMeasured(tx, end - offset, batchSizer);
+        }
+    }
+
+    private void createNeo4jIndices(final Graph graph) throws InterruptedException {
+        final Neo4jIndexBuilder indexBuilder = new Neo4jIndexBuilder(dbService);
+        indexBuilder.createIndices(graph, labelFilter);
+        markReadyWhenIndexesOnline(indexBuilder);
+    }
+
+    /**
+     * Waits for the population of all existing indexes and marks the database as ready afterward.
+     */
+    public void awaitIndexes() {
+        try {
+            markReadyWhenIndexesOnline(new Neo4jIndexBuilder(dbService));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void markReadyWhenIndexesOnline(final Neo4jIndexBuilder indexBuilder) throws InterruptedException {
+        if (!indexBuilder.awaitIndexesOnline() && LOGGER.isWarnEnabled())
+            LOGGER.warn("Not all indices could be populated, queries may fall back to label scans");
+        ready = true;
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Neo4j database is ready");
+    }
+
+    /**
+     * @return {@code true} once the database is started and all indexes are online
+     */
+    public boolean isReady() {
+        return ready && metrics.isDatabaseAvailable();
+    }
+
+    public Neo4jMetrics getMetrics() {
+        return metrics;
+    }
+
+    GraphDatabaseService getDatabaseService() {
+        return dbService;
+    }
 }
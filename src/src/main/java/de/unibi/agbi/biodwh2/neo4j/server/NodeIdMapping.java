@@ -0,0 +1,232 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.neo4j.internal.unsafe.UnsafeUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Primitive mapping of BioDWH2 node ids to Neo4j internal node ids. The entries are stored in open addressing hash
+ * tables outside the java heap. Small graphs use direct buffers, while very large graphs spill the tables into
+ * memory-mapped files, so the heap usage stays flat independent of the graph size.
+ * <p>
+ * The tables are split into independently locked segments to allow concurrent access. Each segment is limited to
+ * {@link #MAX_SEGMENT_CAPACITY} slots, so its table fits into a single buffer or mapped region of at most 1 GiB.
+ * Replaced tables and all tables on {@link #close()} are freed or unmapped explicitly and their files deleted, so
+ * repeated imports in one JVM do not depend on the garbage collector to release the memory or disk space.
+ */
+final class NodeIdMapping implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(NodeIdMapping.class);
+    static final long MISSING = -1;
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final int MIN_SEGMENT_CAPACITY = 1 << 10;
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 26;
+    private static final double LOAD_FACTOR = 0.7;
+    private static final int SLOT_BYTES = 2 * Long.BYTES;
+
+    private final Segment[] segments;
+    private final Path spillDirectory;
+
+    /**
+     * @param expectedSize   Expected number of entries used to pre-size the tables
+     * @param spillDirectory Directory for the memory-mapped tables
+     * @param spillThreshold Table size in bytes from which on the tables are memory-mapped instead of held in direct
+     *                       buffers
+     */
+    NodeIdMapping(final long expectedSize, final Path spillDirectory, final long spillThreshold) throws IOException {
+        this.spillDirectory = spillDirectory;
+        final int segmentCapacity = getSegmentCapacity(expectedSize);
+        final boolean spill = (long) segmentCapacity * SLOT_BYTES * SEGMENT_COUNT > spillThreshold;
+        if (spill) {
+            Files.createDirectories(spillDirectory);
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info("Using memory-mapped node id mapping for {} nodes in '{}'", expectedSize, spillDirectory);
+        }
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++)
+            segments[i] = new Segment(spill ? spillDirectory.resolve("segment-" + i) : null, segmentCapacity);
+    }
+
+    private static int getSegmentCapacity(final long expectedSize) {
+        final long slots = (long) Math.ceil(expectedSize / LOAD_FACTOR / SEGMENT_COUNT);
+        final long capacity = Long.highestOneBit(Math.max(slots, MIN_SEGMENT_CAPACITY) - 1) << 1;
+        return (int) Math.min(capacity, MAX_SEGMENT_CAPACITY);
+    }
+
+    private static long hash(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 29);
+    }
+
+    private Segment getSegment(final long hash) {
+        return segments[(int) (hash >>> (Long.SIZE - SEGMENT_BITS))];
+    }
+
+    void put(final long nodeId, final long neo4jId) {
+        final long hash = hash(nodeId);
+        getSegment(hash).put(hash, nodeId, neo4jId);
+    }
+
+    /**
+     * @return The Neo4j node id or {@link #MISSING} if the node id is unknown
+     */
+    long get(final long nodeId) {
+        final long hash = hash(nodeId);
+        return getSegment(hash).get(hash, nodeId);
+    }
+
+    long size() {
+        long size = 0;
+        for (final Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i] != null)
+                segments[i].release();
+            segments[i] = null;
+        }
+        FileUtils.deleteQuietly(spillDirectory.toFile());
+    }
+
+    /**
+     * Open addressing table with linear probing. Each slot consists of the key incremented by one, so that zeroed
+     * memory represents empty slots, followed by the value.
+     * <p>
+     * A spilled table stays mapped after its file channel is closed. Its file is kept until the table is released,
+     * which unmaps the table first, as mapped files cannot be deleted on every platform.
+     */
+    private static final class Segment {
+        private final Path filePath;
+        private ByteBuffer buffer;
+        private Path bufferFilePath;
+        private LongBuffer table;
+        private int capacity;
+        private int size;
+        private int generation;
+
+        Segment(final Path filePath, final int capacity) {
+            this.filePath = filePath;
+            this.capacity = capacity;
+            bufferFilePath = nextFilePath();
+            buffer = allocate(capacity, bufferFilePath);
+            table = buffer.asLongBuffer();
+        }
+
+        private Path nextFilePath() {
+            return filePath == null ? null : filePath.resolveSibling(filePath.getFileName() + "." + generation++);
+        }
+
+        private static ByteBuffer allocate(final int capacity, final Path path) {
+            final long bytes = (long) capacity * SLOT_BYTES;
+            if (path == null)
+                return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+            try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                                                              StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes).order(ByteOrder.nativeOrder());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Frees the direct buffer or unmaps the table immediately and deletes its file.
+         */
+        private static void free(final ByteBuffer buffer, final Path path) {
+            UnsafeUtil.invokeCleaner(buffer);
+            if (path == null)
+                return;
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                if (LOGGER.isWarnEnabled())
+                    LOGGER.warn("Failed to delete node id mapping table '{}'", path, e);
+            }
+        }
+
+        synchronized void release() {
+            if (buffer == null)
+                return;
+            table = null;
+            free(buffer, bufferFilePath);
+            buffer = null;
+        }
+
+        synchronized void put(final long hash, final long key, final long value) {
+            if (size + 1 > capacity * LOAD_FACTOR) {
+                if (capacity >= MAX_SEGMENT_CAPACITY)
+                    throw new IllegalStateException("Node id mapping segment is full with " + size + " entries");
+                resize();
+            }
+            if (insert(table, capacity, hash, key + 1, value))
+                size++;
+        }
+
+        private static boolean insert(final LongBuffer table, final int capacity, final long hash, final long storedKey,
+                                      final long value) {
+            final int mask = capacity - 1;
+            int slot = (int) hash & mask;
+            while (true) {
+                final long current = table.get(slot * 2);
+                if (current == 0 || current == storedKey) {
+                    table.put(slot * 2, storedKey);
+                    table.put(slot * 2 + 1, value);
+                    return current == 0;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        synchronized long get(final long hash, final long key) {
+            final long storedKey = key + 1;
+            final int mask = capacity - 1;
+            int slot = (int) hash & mask;
+            while (true) {
+                final long current = table.get(slot * 2);
+                if (current == 0)
+                    return MISSING;
+                if (current == storedKey)
+                    return table.get(slot * 2 + 1);
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private void resize() {
+            final int newCapacity = capacity << 1;
+            final Path newFilePath = nextFilePath();
+            final ByteBuffer newBuffer = allocate(newCapacity, newFilePath);
+            final LongBuffer newTable = newBuffer.asLongBuffer();
+            for (int slot = 0; slot < capacity; slot++) {
+                final long storedKey = table.get(slot * 2);
+                if (storedKey != 0)
+                    insert(newTable, newCapacity, hash(storedKey - 1), storedKey, table.get(slot * 2 + 1));
+            }
+            // The old table is not referenced anymore, free it now instead of holding both until the next GC
+            free(buffer, bufferFilePath);
+            buffer = newBuffer;
+            bufferFilePath = newFilePath;
+            table = newTable;
+            capacity = newCapacity;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.io.pagecache.PageCache;
+import org.neo4j.io.pagecache.PageCursor;
+import org.neo4j.io.pagecache.PagedFile;
+import org.neo4j.io.pagecache.context.CursorContext;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preloads the store and index files into the page cache, so the first queries after a start do not fault in every
+ * page on demand. The files are read in parallel in page ranges until the page cache is full.
+ * <p>
+ * The order of the files follows a profile recorded at the previous shutdown, which holds the bytes read per file
+ * by the queries of the previous run, so the files hot in the past are loaded first. The reads of the warm-up itself
+ * are excluded from the profile. The community page cache does not expose which pages are resident, so the profile
+ * is kept per file. Without a profile, or for files missing in it, the node, relationship, index and property stores
+ * are loaded in this order.
+ */
+final class PageCacheWarmer {
+    private static final Logger LOGGER = LogManager.getLogger(PageCacheWarmer.class);
+    static final String PROFILE_FILE_NAME = "page-cache-profile.txt";
+    private static final int PAGES_PER_TASK = 8192;
+    private static final long PROGRESS_LOG_INTERVAL_MILLIS = 10_000;
+
+    private final PageCache pageCache;
+    private final Path databasePath;
+    private final Path profilePath;
+    private final int workerCount;
+    private final Map<String, Long> baseline = new ConcurrentHashMap<>();
+
+    PageCacheWarmer(final GraphDatabaseService dbService, final Path databasePath, final Path profilePath,
+                    final int workerCount) {
+        pageCache = ((GraphDatabaseAPI) dbService).getDependencyResolver().resolveDependency(PageCache.class);
+        this.databasePath = databasePath.toAbsolutePath().normalize();
+        this.profilePath = profilePath;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Stores the bytes read per mapped file since the start or the end of the warm-up. Nothing is stored if the page
+     * cache holds no mappings anymore, so a profile is not overwritten after the database was shut down.
+     */
+    void recordProfile() {
+        final List<String> lines = new ArrayList<>();
+        for (final PagedFile pagedFile : pageCache.listExistingMappings()) {
+            final String path = getRelativePath(pagedFile);
+            final long bytesRead = pagedFile.pageFileCounters().bytesRead() - baseline.getOrDefault(path, 0L);
+            if (bytesRead > 0)
+                lines.add(path + "\t" + bytesRead);
+        }
+        if (lines.isEmpty())
+            return;
+        try {
+            Files.write(profilePath, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Failed to store page cache profile '{}'", profilePath, e);
+        }
+    }
+
+    private String getRelativePath(final PagedFile pagedFile) {
+        final Path path = pagedFile.path().toAbsolutePath().normalize();
+        return path.startsWith(databasePath) ? databasePath.relativize(path).toString() : path.toString();
+    }
+
+    private Map<String, Long> loadProfile() {
+        final Map<String, Long> profile = new HashMap<>();
+        if (!Files.exists(profilePath))
+            return profile;
+        try {
+            for (final String line : Files.readAllLines(profilePath, StandardCharsets.UTF_8)) {
+                final int separator = line.lastIndexOf('\t');
+                if (separator > 0)
+                    profile.put(line.substring(0, separator), Long.parseLong(line.substring(separator + 1)));
+            }
+        } catch (IOException | NumberFormatException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Ignoring invalid page cache profile '{}'", profilePath, e);
+            profile.clear();
+        }
+        return profile;
+    }
+
+    void warmUp() throws InterruptedException {
+        final long startTime = System.currentTimeMillis();
+        final Map<String, Long> profile = loadProfile();
+        final List<PagedFile> files = new ArrayList<>(pageCache.listExistingMappings());
+        files.sort(Comparator.comparingLong((PagedFile file) -> -profile.getOrDefault(getRelativePath(file), 0L))
+                             .thenComparingInt((file) -> getStorePriority(getRelativePath(file))));
+        long remainingPages = pageCache.maxCachedPages();
+        final List<long[]> ranges = new ArrayList<>();
+        final List<PagedFile> rangeFiles = new ArrayList<>();
+        for (final PagedFile file : files) {
+            if (remainingPages <= 0)
+                break;
+            final long pageCount;
+            try {
+                pageCount = Math.min(file.getLastPageId() + 1, remainingPages);
+            } catch (IOException e) {
+                continue;
+            }
+            remainingPages -= pageCount;
+            for (long start = 0; start < pageCount; start += PAGES_PER_TASK) {
+                ranges.add(new long[]{start, Math.min(pageCount, start + PAGES_PER_TASK)});
+                rangeFiles.add(file);
+            }
+        }
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Warming up page cache with {} store files{}...", files.size(),
+                        profile.isEmpty() ? "" : " ordered by the recorded profile");
+        final AtomicLong loadedPages = new AtomicLong();
+        final ExecutorService executor = createExecutor();
+        try {
+            final List<Future<?>> futures = new ArrayList<>(ranges.size());
+            for (int i = 0; i < ranges.size(); i++) {
+                final PagedFile file = rangeFiles.get(i);
+                final long[] range = ranges.get(i);
+                futures.add(executor.submit(() -> loadPages(file, range[0], range[1], loadedPages)));
+            }
+            long lastLogTime = System.currentTimeMillis();
+            for (final Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (LOGGER.isWarnEnabled())
+                        LOGGER.warn("Failed to warm up part of the page cache", e.getCause());
+                }
+                if (System.currentTimeMillis() - lastLogTime >= PROGRESS_LOG_INTERVAL_MILLIS) {
+                    lastLogTime = System.currentTimeMillis();
+                    if (LOGGER.isInfoEnabled())
+                        LOGGER.info("\tPage cache warm-up progress: {} MiB", toMiB(loadedPages.get()));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // Only the reads after the warm-up reflect the queries and belong into the profile
+        for (final PagedFile file : pageCache.listExistingMappings())
+            baseline.put(getRelativePath(file), file.pageFileCounters().bytesRead());
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Warmed up page cache with {} MiB in {}s", toMiB(loadedPages.get()),
+                        (System.currentTimeMillis() - startTime) / 1000);
+    }
+
+    private long toMiB(final long pages) {
+        return pages * pageCache.pageSize() / (1024 * 1024);
+    }
+
+    private static int getStorePriority(final String path) {
+        if (path.contains("nodestore"))
+            return 0;
+        if (path.contains("relationshipstore"))
+            return 1;
+        if (path.contains("relationshipgroupstore"))
+            return 2;
+        if (path.contains("schema"))
+            return 3;
+        if (path.endsWith("propertystore.db"))
+            return 4;
+        if (path.contains("propertystore"))
+            return 5;
+        return 6;
+    }
+
+    private ExecutorService createExecutor() {
+        final AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(workerCount, (runnable) -> {
+            final Thread thread = new Thread(runnable, "page-cache-warmup-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Void loadPages(final PagedFile file, final long start, final long end,
+                                  final AtomicLong loadedPages) throws IOException {
+        try (PageCursor cursor = file.io(start, PagedFile.PF_SHARED_READ_LOCK, CursorContext.NULL_CONTEXT)) {
+            for (long pageId = start; pageId < end && cursor.next(pageId); pageId++)
+                loadedPages.incrementAndGet();
+        }
+        return null;
+    }
+}
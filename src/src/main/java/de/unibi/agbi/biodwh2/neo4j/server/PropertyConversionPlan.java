@@ -0,0 +1,226 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.io.mvstore.MVStoreModel;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Conversion of the properties of a single node or edge label to Neo4j values. The conversion of a property key is
+ * planned once from the first non-null value seen for the key and reused for all further entities of the label, so
+ * the per-property work is a map lookup and a switch. Collections of numbers are converted directly into primitive
+ * arrays with {@code -1} or {@code NaN} in place of {@code null} elements. The plan also caches the interned
+ * property keys as well as the Neo4j label or relationship type of the label. Instances are thread-safe.
+ */
+final class PropertyConversionPlan {
+    private enum Conversion {
+        UNDECIDED,
+        IGNORED,
+        IDENTITY,
+        ENUM,
+        INT_COLLECTION,
+        LONG_COLLECTION,
+        DOUBLE_COLLECTION,
+        FLOAT_COLLECTION,
+        STRING_COLLECTION,
+        INT_BOXED_ARRAY,
+        LONG_BOXED_ARRAY,
+        GENERIC
+    }
+
+    private static final class KeyPlan {
+        private final String key;
+        private volatile Conversion conversion;
+
+        KeyPlan(final String key, final Conversion conversion) {
+            this.key = key.intern();
+            this.conversion = conversion;
+        }
+    }
+
+    private final String[] names;
+    private final Label label;
+    private final RelationshipType relationshipType;
+    private final Predicate<String> isPropertyImported;
+    private final Map<String, KeyPlan> keyPlans = new ConcurrentHashMap<>();
+
+    private PropertyConversionPlan(final String name, final Predicate<String> isPropertyImported) {
+        names = new String[]{name};
+        label = Label.label(name);
+        relationshipType = RelationshipType.withName(name);
+        this.isPropertyImported = isPropertyImported;
+    }
+
+    static PropertyConversionPlan forNodeLabel(final String label) {
+        return new PropertyConversionPlan(label, PropertyUtils::isNodePropertyImported);
+    }
+
+    static PropertyConversionPlan forEdgeLabel(final String label) {
+        return new PropertyConversionPlan(label, PropertyUtils::isEdgePropertyImported);
+    }
+
+    /**
+     * @return Shared single element array of the label name. Must not be modified.
+     */
+    String[] getNames() {
+        return names;
+    }
+
+    Label getLabel() {
+        return label;
+    }
+
+    RelationshipType getRelationshipType() {
+        return relationshipType;
+    }
+
+    /**
+     * Converts the imported, non-null properties of the entity into the given arrays.
+     *
+     * @param keys   Receives the interned property keys, must hold at least {@code entity.keySet().size()} elements
+     * @param values Receives the converted values, must hold at least {@code entity.keySet().size()} elements
+     * @return Number of converted properties
+     */
+    int convert(final MVStoreModel entity, final String[] keys, final Object[] values) {
+        int count = 0;
+        for (final String propertyKey : entity.keySet()) {
+            KeyPlan keyPlan = keyPlans.get(propertyKey);
+            if (keyPlan == null)
+                keyPlan = keyPlans.computeIfAbsent(propertyKey, (key) -> new KeyPlan(key, isPropertyImported.test(
+                        key) ? Conversion.UNDECIDED : Conversion.IGNORED));
+            if (keyPlan.conversion == Conversion.IGNORED)
+                continue;
+            final Object value = convert(keyPlan, entity.getProperty(propertyKey));
+            if (value != null) {
+                keys[count] = keyPlan.key;
+                values[count] = value;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Object convert(final KeyPlan keyPlan, final Object value) {
+        if (value == null)
+            return null;
+        Conversion conversion = keyPlan.conversion;
+        if (conversion == Conversion.UNDECIDED) {
+            conversion = plan(value);
+            if (conversion == Conversion.UNDECIDED)
+                return PropertyUtils.toNeo4jValue(value);
+            keyPlan.conversion = conversion;
+        }
+        try {
+            return switch (conversion) {
+                case IDENTITY -> value instanceof Collection<?> || value instanceof Enum<?> ||
+                                 value instanceof Integer[] || value instanceof Long[] ?
+                                 PropertyUtils.toNeo4jValue(value) : value;
+                case ENUM -> value.toString();
+                case INT_COLLECTION -> toIntArray((Collection<?>) value);
+                case LONG_COLLECTION -> toLongArray((Collection<?>) value);
+                case DOUBLE_COLLECTION -> toDoubleArray((Collection<?>) value);
+                case FLOAT_COLLECTION -> toFloatArray((Collection<?>) value);
+                case STRING_COLLECTION -> ((Collection<?>) value).toArray(new String[0]);
+                case INT_BOXED_ARRAY -> toIntArray((Integer[]) value);
+                case LONG_BOXED_ARRAY -> toLongArray((Long[]) value);
+                default -> PropertyUtils.toNeo4jValue(value);
+            };
+        } catch (ClassCastException | ArrayStoreException e) {
+            // The value does not match the planned type of the key, so the key falls back to the generic conversion
+            keyPlan.conversion = Conversion.GENERIC;
+            return PropertyUtils.toNeo4jValue(value);
+        }
+    }
+
+    private static Conversion plan(final Object value) {
+        if (value instanceof Enum<?>)
+            return Conversion.ENUM;
+        if (value instanceof Integer[])
+            return Conversion.INT_BOXED_ARRAY;
+        if (value instanceof Long[])
+            return Conversion.LONG_BOXED_ARRAY;
+        if (value instanceof Collection<?> collection) {
+            final Object element = getFirstNonNullElement(collection);
+            if (element == null)
+                return Conversion.UNDECIDED;
+            if (element instanceof Integer)
+                return Conversion.INT_COLLECTION;
+            if (element instanceof Long)
+                return Conversion.LONG_COLLECTION;
+            if (element instanceof Double)
+                return Conversion.DOUBLE_COLLECTION;
+            if (element instanceof Float)
+                return Conversion.FLOAT_COLLECTION;
+            if (element instanceof String)
+                return Conversion.STRING_COLLECTION;
+            return Conversion.GENERIC;
+        }
+        return Conversion.IDENTITY;
+    }
+
+    private static Object getFirstNonNullElement(final Collection<?> collection) {
+        for (final Object element : collection)
+            if (element != null)
+                return element;
+        return null;
+    }
+
+    private static int[] toIntArray(final Collection<?> collection) {
+        final int[] result = new int[collection.size()];
+        final Iterator<?> iterator = collection.iterator();
+        for (int i = 0; i < result.length; i++) {
+            final Integer element = (Integer) iterator.next();
+            result[i] = element == null ? -1 : element;
+        }
+        return result;
+    }
+
+    private static long[] toLongArray(final Collection<?> collection) {
+        final long[] result = new long[collection.size()];
+        final Iterator<?> iterator = collection.iterator();
+        for (int i = 0; i < result.length; i++) {
+            final Long element = (Long) iterator.next();
+            result[i] = element == null ? -1 : element;
+        }
+        return result;
+    }
+
+    private static double[] toDoubleArray(final Collection<?> collection) {
+        final double[] result = new double[collection.size()];
+        final Iterator<?> iterator = collection.iterator();
+        for (int i = 0; i < result.length; i++) {
+            final Double element = (Double) iterator.next();
+            result[i] = element == null ? Double.NaN : element;
+        }
+        return result;
+    }
+
+    private static float[] toFloatArray(final Collection<?> collection) {
+        final float[] result = new float[collection.size()];
+        final Iterator<?> iterator = collection.iterator();
+        for (int i = 0; i < result.length; i++) {
+            final Float element = (Float) iterator.next();
+            result[i] = element == null ? Float.NaN : element;
+        }
+        return result;
+    }
+
+    private static int[] toIntArray(final Integer[] array) {
+        final int[] result = new int[array.length];
+        for (int i = 0; i < array.length; i++)
+            result[i] = array[i] == null ? -1 : array[i];
+        return result;
+    }
+
+    private static long[] toLongArray(final Long[] array) {
+        final long[] result = new long[array.length];
+        for (int i = 0; i < array.length; i++)
+            result[i] = array[i] == null ? -1 : array[i];
+        return result;
+    }
+}
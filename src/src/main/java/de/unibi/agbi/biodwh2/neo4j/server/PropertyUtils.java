@@ -0,0 +1,64 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.io.mvstore.MVStoreModel;
+import de.unibi.agbi.biodwh2.core.model.graph.Edge;
+import de.unibi.agbi.biodwh2.core.model.graph.Node;
+
+import java.util.Collection;
+
+final class PropertyUtils {
+    private PropertyUtils() {
+    }
+
+    static boolean isNodePropertyImported(final String propertyKey) {
+        return MVStoreModel.ID_FIELD.equals(propertyKey) || !Node.IGNORED_FIELDS.contains(propertyKey);
+    }
+
+    static boolean isEdgePropertyImported(final String propertyKey) {
+        return MVStoreModel.ID_FIELD.equals(propertyKey) || !Edge.IGNORED_FIELDS.contains(propertyKey);
+    }
+
+    static Object toNeo4jValue(Object value) {
+        if (value instanceof Integer[] array)
+            for (int i = 0; i < array.length; i++)
+                array[i] = array[i] == null ? -1 : array[i];
+        if (value instanceof Long[] array)
+            for (int i = 0; i < array.length; i++)
+                array[i] = array[i] == null ? -1 : array[i];
+        if (value instanceof Collection)
+            value = convertCollectionToArray((Collection<?>) value);
+        if (value instanceof Enum<?>)
+            value = value.toString();
+        return value;
+    }
+
+    @SuppressWarnings({"SuspiciousToArrayCall"})
+    static Object convertCollectionToArray(final Collection<?> collection) {
+        Class<?> type = null;
+        for (Object t : collection) {
+            if (t != null) {
+                type = t.getClass();
+                break;
+            }
+        }
+        if (type != null) {
+            if (type.equals(String.class))
+                return collection.stream().map(type::cast).toArray(String[]::new);
+            if (type.equals(Boolean.class))
+                return collection.stream().map(type::cast).toArray(Boolean[]::new);
+            if (type.equals(Integer.class))
+                return collection.stream().map(type::cast).toArray(Integer[]::new);
+            if (type.equals(Float.class))
+                return collection.stream().map(type::cast).toArray(Float[]::new);
+            if (type.equals(Long.class))
+                return collection.stream().map(type::cast).toArray(Long[]::new);
+            if (type.equals(Double.class))
+                return collection.stream().map(type::cast).toArray(Double[]::new);
+            if (type.equals(Byte.class))
+                return collection.stream().map(type::cast).toArray(Byte[]::new);
+            if (type.equals(Short.class))
+                return collection.stream().map(type::cast).toArray(Short[]::new);
+        }
+        return collection.stream().map(Object::toString).toArray(String[]::new);
+    }
+}
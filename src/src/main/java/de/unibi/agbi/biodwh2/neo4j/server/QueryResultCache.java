@@ -0,0 +1,120 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Least recently used cache of serialized query results, bounded by the total size of the cached results. The
+ * database only changes when it is rebuilt from the workspace, so the cache is cleared as soon as the workspace hash
+ * in the first line of the checksum file changes. The checksum file is checked at most once per second.
+ */
+final class QueryResultCache {
+    private static final Logger LOGGER = LogManager.getLogger(QueryResultCache.class);
+    private static final long CHECKSUM_CHECK_INTERVAL_MILLIS = 1_000;
+    /**
+     * Share of the capacity a single result may take at most to be cached.
+     */
+    private static final int MAX_ENTRY_SHARE = 10;
+
+    private final long capacityBytes;
+    private final Path checksumFilePath;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+    private long lastChecksumCheckTime;
+    private String checksumFileState;
+    private String checksum;
+
+    QueryResultCache(final long capacityBytes, final Path checksumFilePath) {
+        this.capacityBytes = capacityBytes;
+        this.checksumFilePath = checksumFilePath;
+        checksumFileState = getChecksumFileState();
+        checksum = readChecksum();
+    }
+
+    synchronized byte[] get(final String key) {
+        validate();
+        final byte[] result = entries.get(key);
+        if (result != null)
+            hits++;
+        else
+            misses++;
+        return result;
+    }
+
+    synchronized void put(final String key, final byte[] result) {
+        if (result.length > capacityBytes / MAX_ENTRY_SHARE)
+            return;
+        final byte[] previous = entries.put(key, result);
+        if (previous != null)
+            sizeBytes -= previous.length;
+        sizeBytes += result.length;
+        final Iterator<byte[]> iterator = entries.values().iterator();
+        while (sizeBytes > capacityBytes && iterator.hasNext()) {
+            sizeBytes -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    private void validate() {
+        final long now = System.currentTimeMillis();
+        if (now - lastChecksumCheckTime < CHECKSUM_CHECK_INTERVAL_MILLIS)
+            return;
+        lastChecksumCheckTime = now;
+        final String state = getChecksumFileState();
+        if (Objects.equals(state, checksumFileState))
+            return;
+        checksumFileState = state;
+        final String newChecksum = readChecksum();
+        if (Objects.equals(newChecksum, checksum))
+            return;
+        checksum = newChecksum;
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Workspace checksum changed, clearing {} cached query results", entries.size());
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    /**
+     * @return Size and modification time of the checksum file or {@code null} if it does not exist
+     */
+    private String getChecksumFileState() {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(checksumFilePath, BasicFileAttributes.class);
+            return attributes.size() + "\t" + attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String readChecksum() {
+        try (BufferedReader reader = Files.newBufferedReader(checksumFilePath, StandardCharsets.UTF_8)) {
+            final String line = reader.readLine();
+            return line == null ? null : line.trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    synchronized Map<String, Long> getStatistics() {
+        final Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("entries", (long) entries.size());
+        statistics.put("sizeBytes", sizeBytes);
+        statistics.put("capacityBytes", capacityBytes);
+        statistics.put("hits", hits);
+        statistics.put("misses", misses);
+        return statistics;
+    }
+}
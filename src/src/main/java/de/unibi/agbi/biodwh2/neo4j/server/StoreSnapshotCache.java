@@ -0,0 +1,208 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.neo4j.kernel.internal.Version;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * Directory of archived database stores, keyed by the workspace hash, the label filter and the Neo4j version. A store
+ * built once for a workspace can be restored from the snapshot directory, which may be a shared mount, instead of
+ * importing the workspace graph again. Snapshots are streamed into a temporary file and moved into place afterward, so
+ * concurrent readers only ever see complete snapshots.
+ * <p>
+ * Each archive holds the files of the database directory below {@code neo4j.db/} and the label fingerprints of the
+ * import in {@code label-fingerprints.txt}, which are needed for later incremental updates.
+ */
+final class StoreSnapshotCache {
+    private static final Logger LOGGER = LogManager.getLogger(StoreSnapshotCache.class);
+    private static final String SNAPSHOT_FILE_PREFIX = "neo4j-store-";
+    private static final String SNAPSHOT_FILE_EXTENSION = ".tar.gz";
+    private static final String DATABASE_ENTRY_PREFIX = "neo4j.db/";
+    private static final String LABEL_FINGERPRINTS_ENTRY = "label-fingerprints.txt";
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Path snapshotDirectory;
+
+    StoreSnapshotCache(final Path snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    static String getKey(final String workspaceHash, final LabelFilter labelFilter) {
+        return DigestUtils.sha256Hex(workspaceHash + "\n" + labelFilter + "\n" + Version.getNeo4jVersion());
+    }
+
+    private Path getSnapshotPath(final String key) {
+        return snapshotDirectory.resolve(SNAPSHOT_FILE_PREFIX + key + SNAPSHOT_FILE_EXTENSION);
+    }
+
+    /**
+     * Replaces the database directory with the content of the snapshot.
+     *
+     * @return Label fingerprints of the restored database or {@code null} if there is no snapshot for the key or it
+     * could not be restored
+     */
+    Map<String, String> restore(final String key, final Path databasePath) {
+        final Path snapshotPath = getSnapshotPath(key);
+        if (!Files.isRegularFile(snapshotPath))
+            return null;
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Restoring database from snapshot '{}'...", snapshotPath);
+        final long startTime = System.currentTimeMillis();
+        final Path target = databasePath.toAbsolutePath().normalize();
+        final Path restorePath = target.resolveSibling(target.getFileName() + ".restore");
+        try {
+            FileUtils.deleteDirectory(restorePath.toFile());
+            final Map<String, String> labelFingerprints = extract(snapshotPath, restorePath);
+            FileUtils.deleteDirectory(target.toFile());
+            Files.move(restorePath, target);
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info("Restored database from snapshot in {}s", (System.currentTimeMillis() - startTime) / 1000);
+            return labelFingerprints;
+        } catch (IOException e) {
+            if (LOGGER.isErrorEnabled())
+                LOGGER.error("Failed to restore database from snapshot '{}'", snapshotPath, e);
+            FileUtils.deleteQuietly(restorePath.toFile());
+            return null;
+        }
+    }
+
+    private static Map<String, String> extract(final Path snapshotPath, final Path destination) throws IOException {
+        Map<String, String> labelFingerprints = null;
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(snapshotPath), BUFFER_SIZE);
+             GzipCompressorInputStream gzipInputStream = new GzipCompressorInputStream(inputStream);
+             TarArchiveInputStream tarInputStream = new TarArchiveInputStream(gzipInputStream)) {
+            TarArchiveEntry entry;
+            while ((entry = (TarArchiveEntry) tarInputStream.getNextEntry()) != null) {
+                if (!entry.isFile())
+                    continue;
+                if (LABEL_FINGERPRINTS_ENTRY.equals(entry.getName())) {
+                    labelFingerprints = parseLabelFingerprints(new String(tarInputStream.readAllBytes(),
+                                                                          StandardCharsets.UTF_8));
+                } else if (entry.getName().startsWith(DATABASE_ENTRY_PREFIX)) {
+                    final Path file = destination.resolve(entry.getName().substring(DATABASE_ENTRY_PREFIX.length()))
+                                                 .normalize();
+                    if (!file.startsWith(destination))
+                        continue;
+                    Files.createDirectories(file.getParent());
+                    Files.copy(tarInputStream, file);
+                }
+            }
+        }
+        if (labelFingerprints == null)
+            throw new IOException("Snapshot does not contain the label fingerprints");
+        return labelFingerprints;
+    }
+
+    private static Map<String, String> parseLabelFingerprints(final String content) {
+        final Map<String, String> labelFingerprints = new LinkedHashMap<>();
+        for (final String line : StringUtils.split(content, '\n')) {
+            final String[] parts = StringUtils.split(line, '\t');
+            if (parts.length == 2)
+                labelFingerprints.put(parts[0], parts[1]);
+        }
+        return labelFingerprints;
+    }
+
+    /**
+     * Archives the database directory unless a snapshot for the key exists already. The database has to be shut
+     * down, so the store files are consistent.
+     */
+    void store(final String key, final Path databasePath, final Map<String, String> labelFingerprints) {
+        final Path snapshotPath = getSnapshotPath(key);
+        if (Files.exists(snapshotPath))
+            return;
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info("Storing database snapshot '{}'...", snapshotPath);
+        final long startTime = System.currentTimeMillis();
+        Path temporaryPath = null;
+        try {
+            Files.createDirectories(snapshotDirectory);
+            temporaryPath = snapshotDirectory.resolve("." + snapshotPath.getFileName() + "." + UUID.randomUUID() +
+                                                      ".tmp");
+            write(temporaryPath, databasePath, labelFingerprints);
+            try {
+                Files.move(temporaryPath, snapshotPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info("Stored database snapshot with {} MiB in {}s", Files.size(snapshotPath) / (1024 * 1024),
+                            (System.currentTimeMillis() - startTime) / 1000);
+        } catch (IOException e) {
+            if (LOGGER.isErrorEnabled())
+                LOGGER.error("Failed to store database snapshot '{}'", snapshotPath, e);
+            if (temporaryPath != null)
+                FileUtils.deleteQuietly(temporaryPath.toFile());
+        }
+    }
+
+    private static void write(final Path archivePath, final Path databasePath,
+                              final Map<String, String> labelFingerprints) throws IOException {
+        final GzipParameters parameters = new GzipParameters();
+        // Store files compress well already at the fastest level, higher levels mostly cost time
+        parameters.setCompressionLevel(Deflater.BEST_SPEED);
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(archivePath), BUFFER_SIZE);
+             GzipCompressorOutputStream gzipOutputStream = new GzipCompressorOutputStream(outputStream, parameters);
+             TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(gzipOutputStream)) {
+            tarOutputStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarOutputStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            final ByteArrayOutputStream fingerprints = new ByteArrayOutputStream();
+            for (final Map.Entry<String, String> entry : labelFingerprints.entrySet())
+                fingerprints.writeBytes((entry.getKey() + "\t" + entry.getValue() + "\n").getBytes(
+                        StandardCharsets.UTF_8));
+            final TarArchiveEntry fingerprintsEntry = new TarArchiveEntry(LABEL_FINGERPRINTS_ENTRY);
+            fingerprintsEntry.setSize(fingerprints.size());
+            tarOutputStream.putArchiveEntry(fingerprintsEntry);
+            fingerprints.writeTo(tarOutputStream);
+            tarOutputStream.closeArchiveEntry();
+            for (final Path file : listStoreFiles(databasePath)) {
+                final String name = databasePath.relativize(file).toString().replace('\\', '/');
+                tarOutputStream.putArchiveEntry(new TarArchiveEntry(file.toFile(), DATABASE_ENTRY_PREFIX + name));
+                Files.copy(file, tarOutputStream);
+                tarOutputStream.closeArchiveEntry();
+            }
+            tarOutputStream.finish();
+        }
+    }
+
+    /**
+     * Lists all files of the database directory except lock files and logs, which are recreated on start.
+     */
+    private static List<Path> listStoreFiles(final Path databasePath) throws IOException {
+        final Path logsPath = databasePath.resolve("logs");
+        try (Stream<Path> files = Files.walk(databasePath)) {
+            return files.filter(Files::isRegularFile).filter((file) -> !file.startsWith(logsPath)).filter((file) -> {
+                final String name = file.getFileName().toString();
+                return !name.equals("store_lock") && !name.equals("database_lock");
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -2,6 +2,8 @@ package de.unibi.agbi.biodwh2.neo4j.server.model;
 
 import picocli.CommandLine;
 
+import java.util.List;
+
 @CommandLine.Command(name = "BioDWH2-Neo4j-Server.jar")
 public class CmdArgs {
     @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "print this message")
@@ -18,6 +20,14 @@ public class CmdArgs {
             "-cs", "--create-start"
     }, arity = "1", paramLabel = "<workspacePath>", description = "Create and start a Neo4j database from the workspace graph")
     public String createStart;
+    @CommandLine.Option(names = {
+            "-u", "--update"
+    }, arity = "1", paramLabel = "<workspacePath>", description = "Update the Neo4j database incrementally with the changed labels of the workspace graph")
+    public String update;
+    @CommandLine.Option(names = {
+            "--export-csv"
+    }, arity = "1", paramLabel = "<workspacePath>", description = "Export the workspace graph as CSV files for neo4j-admin database import")
+    public String exportCsv;
     @CommandLine.Option(names = {
             "-p", "--port"
     }, defaultValue = "7474", paramLabel = "<port>", description = "Specifies the Neo4j browser port (default 7474)")
@@ -26,4 +36,100 @@ public class CmdArgs {
             "-bp", "--bolt-port"
     }, defaultValue = "8083", paramLabel = "<boltPort>", description = "Specifies the Neo4j bolt port (default 8083)")
     public Integer boltPort;
+    @CommandLine.Option(names = {
+            "-bi", "--bulk-import"
+    }, description = "Create the database offline with the parallel batch importer before starting Neo4j")
+    public boolean bulkImport;
+    @CommandLine.Option(names = {
+            "-w", "--workers"
+    }, paramLabel = "<workers>", description = "Number of import worker threads (default number of processors)")
+    public Integer workers;
+    @CommandLine.Option(names = {
+            "--min-batch-size"
+    }, defaultValue = "100", paramLabel = "<size>", description = "Minimum number of entities per import transaction (default 100)")
+    public Integer minBatchSize;
+    @CommandLine.Option(names = {
+            "--max-batch-size"
+    }, defaultValue = "50000", paramLabel = "<size>", description = "Maximum number of entities per import transaction (default 50000)")
+    public Integer maxBatchSize;
+    @CommandLine.Option(names = {
+            "--max-tx-memory"
+    }, defaultValue = "256", paramLabel = "<mb>", description = "Transaction state memory budget per import transaction in MB (default 256)")
+    public Integer maxTransactionMemory;
+    @CommandLine.Option(names = {
+            "--memory-report"
+    }, description = "Print the planned Neo4j memory configuration and its reasoning when starting Neo4j")
+    public boolean memoryReport;
+    @CommandLine.Option(names = {
+            "--include-node-labels"
+    }, split = ",", paramLabel = "<label>", description = "Only import nodes with these labels")
+    public List<String> includeNodeLabels;
+    @CommandLine.Option(names = {
+            "--exclude-node-labels"
+    }, split = ",", paramLabel = "<label>", description = "Do not import nodes with these labels")
+    public List<String> excludeNodeLabels;
+    @CommandLine.Option(names = {
+            "--include-edge-labels"
+    }, split = ",", paramLabel = "<label>", description = "Only import edges with these labels")
+    public List<String> includeEdgeLabels;
+    @CommandLine.Option(names = {
+            "--exclude-edge-labels"
+    }, split = ",", paramLabel = "<label>", description = "Do not import edges with these labels")
+    public List<String> excludeEdgeLabels;
+    @CommandLine.Option(names = {
+            "--include-sources"
+    }, split = ",", paramLabel = "<source>", description = "Only import labels of these data sources (label prefix before the first underscore)")
+    public List<String> includeSources;
+    @CommandLine.Option(names = {
+            "--exclude-sources"
+    }, split = ",", paramLabel = "<source>", description = "Do not import labels of these data sources (label prefix before the first underscore)")
+    public List<String> excludeSources;
+    @CommandLine.Option(names = {
+            "--bolt-threads"
+    }, defaultValue = "500", paramLabel = "<threads>", description = "Maximum number of Bolt worker threads, each running one query at a time (default 500)")
+    public Integer boltThreads;
+    @CommandLine.Option(names = {
+            "--bolt-min-threads"
+    }, defaultValue = "20", paramLabel = "<threads>", description = "Number of Bolt worker threads kept when idle (default 20)")
+    public Integer boltMinThreads;
+    @CommandLine.Option(names = {
+            "--bolt-thread-keep-alive"
+    }, defaultValue = "600", paramLabel = "<seconds>", description = "Time an idle Bolt worker thread above the minimum is kept (default 600)")
+    public Integer boltThreadKeepAlive;
+    @CommandLine.Option(names = {
+            "--bolt-connection-keep-alive"
+    }, defaultValue = "60", paramLabel = "<seconds>", description = "Interval of keep-alive messages on Bolt connections to detect dead clients during long queries (default 60)")
+    public Integer boltConnectionKeepAlive;
+    @CommandLine.Option(names = {
+            "--http-max-connections"
+    }, defaultValue = "1000", paramLabel = "<connections>", description = "Maximum number of concurrent HTTP connections (default 1000)")
+    public Integer httpMaxConnections;
+    @CommandLine.Option(names = {
+            "--offline"
+    }, description = "Never access the network. The neo4j-browser is taken from the previous extraction, the bundled archive or --browser-archive")
+    public boolean offline;
+    @CommandLine.Option(names = {
+            "--browser-archive"
+    }, paramLabel = "<archivePath>", description = "Use this neo4j-browser archive (.tgz) instead of downloading one")
+    public String browserArchive;
+    @CommandLine.Option(names = {
+            "--warm-up"
+    }, description = "Preload the store files into the page cache before reporting the server as ready")
+    public boolean warmUp;
+    @CommandLine.Option(names = {
+            "--query-cache-size"
+    }, defaultValue = "256", paramLabel = "<mb>", description = "Memory for cached results of the /cypher HTTP endpoint in MB, 0 disables the cache (default 256)")
+    public Integer queryCacheSize;
+    @CommandLine.Option(names = {
+            "--query-max-result-size"
+    }, defaultValue = "64", paramLabel = "<mb>", description = "Maximum size of a /cypher HTTP endpoint result in MB, larger results are rejected and have to be exported instead, 0 disables the limit (default 64)")
+    public Integer queryMaxResultSize;
+    @CommandLine.Option(names = {
+            "--snapshot-dir"
+    }, paramLabel = "<path>", description = "Directory of database store snapshots by workspace hash and label filter. Created databases are stored there and restored on later creates instead of importing again")
+    public String snapshotDir;
+    @CommandLine.Option(names = {
+            "--resume"
+    }, description = "Continue an interrupted database creation from its last checkpoint instead of starting over")
+    public boolean resume;
 }
@@ -0,0 +1,96 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.core.model.graph.Edge;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EdgePartitionScheduleTest {
+    @Test
+    void roundsNeverContainAGroupTwice() {
+        for (int workerCount = 1; workerCount <= 16; workerCount++) {
+            final int groupCount = 2 * workerCount;
+            for (final int[] round : new EdgePartitionSchedule(workerCount).getRounds()) {
+                final Set<Integer> groups = new HashSet<>();
+                for (final int bucket : round) {
+                    final int groupA = bucket / groupCount;
+                    final int groupB = bucket % groupCount;
+                    assertTrue(groups.add(groupA), "Group " + groupA + " appears twice in a round");
+                    if (groupB != groupA)
+                        assertTrue(groups.add(groupB), "Group " + groupB + " appears twice in a round");
+                }
+            }
+        }
+    }
+
+    @Test
+    void roundsCoverEveryBucketExactlyOnce() {
+        for (int workerCount = 1; workerCount <= 16; workerCount++) {
+            final int groupCount = 2 * workerCount;
+            final Set<Integer> buckets = new HashSet<>();
+            for (final int[] round : new EdgePartitionSchedule(workerCount).getRounds())
+                for (final int bucket : round) {
+                    assertTrue(bucket / groupCount <= bucket % groupCount, "Bucket " + bucket + " is not ordered");
+                    assertTrue(buckets.add(bucket), "Bucket " + bucket + " is scheduled twice");
+                }
+            assertEquals(groupCount * (groupCount + 1) / 2, buckets.size());
+        }
+    }
+
+    @Test
+    void bucketsOfARoundNeverShareEndpoints() {
+        final int edgeCount = 10_000;
+        final Random random = new Random(42);
+        final ImportBatch<Edge> batch = createBatch(edgeCount);
+        for (int i = 0; i < edgeCount; i++) {
+            batch.endpointIds[i * 2] = random.nextInt(2_000);
+            batch.endpointIds[i * 2 + 1] = random.nextInt(2_000);
+        }
+        final EdgePartitionSchedule schedule = new EdgePartitionSchedule(4);
+        final EdgePartitionSchedule.Bucket[] buckets = schedule.partition(List.of(batch));
+        int partitioned = 0;
+        for (final int[] round : schedule.getRounds()) {
+            final Map<Long, Integer> nodeBuckets = new HashMap<>();
+            for (final int bucketIndex : round) {
+                final EdgePartitionSchedule.Bucket bucket = buckets[bucketIndex];
+                if (bucket == null)
+                    continue;
+                for (int position = 0; position < bucket.size(); position++) {
+                    final int index = bucket.getIndex(position);
+                    final long[] nodeIds = {batch.endpointIds[index * 2], batch.endpointIds[index * 2 + 1]};
+                    for (final long nodeId : nodeIds) {
+                        final Integer previous = nodeBuckets.putIfAbsent(nodeId, bucketIndex);
+                        assertTrue(previous == null || previous == bucketIndex,
+                                   "Node " + nodeId + " is locked by two buckets of a round");
+                    }
+                    partitioned++;
+                }
+            }
+        }
+        assertEquals(edgeCount, partitioned);
+    }
+
+    @Test
+    void partitionDropsExistingEdgesAndEdgesWithUnknownNodes() {
+        final ImportBatch<Edge> batch = createBatch(4);
+        batch.endpointIds = new long[]{1, 2, ImportBatch.EXISTING_EDGE, 3, NodeIdMapping.MISSING, 4, 5,
+                                       NodeIdMapping.MISSING};
+        final EdgePartitionSchedule.Bucket[] buckets = new EdgePartitionSchedule(2).partition(List.of(batch));
+        int partitioned = 0;
+        for (final EdgePartitionSchedule.Bucket bucket : buckets)
+            if (bucket != null) {
+                partitioned += bucket.size();
+                assertEquals(0, bucket.getIndex(0));
+                assertSame(batch, bucket.getBatch(0));
+            }
+        assertEquals(1, partitioned);
+    }
+
+    private static ImportBatch<Edge> createBatch(final int size) {
+        final ImportBatch<Edge> batch = new ImportBatch<>(null, 0, null, Collections.<Edge>nCopies(size, null));
+        batch.endpointIds = new long[size * 2];
+        return batch;
+    }
+}
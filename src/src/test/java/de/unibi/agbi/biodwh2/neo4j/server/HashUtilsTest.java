@@ -0,0 +1,64 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashUtilsTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Known answers of the xxHash64 reference implementation with seed 0.
+     */
+    @Test
+    void xxHash64MatchesReferenceVectors() {
+        assertEquals(0xEF46DB3751D8E999L, xxHash64(""));
+        assertEquals(0xD24EC4F1A98C6E5BL, xxHash64("a"));
+        assertEquals(0x44BC2CF5AD770999L, xxHash64("abc"));
+        // Longer than 32 bytes, so the four lane accumulators are used
+        assertEquals(0xFBCEA83C8A378BF1L, xxHash64("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    void xxHash64OnlyHashesTheRemainingBytes() {
+        final byte[] content = "prefix-Nobody inspects the spammish repetition-suffix".getBytes(
+                StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.wrap(content, 7, content.length - 14);
+        assertEquals(0xFBCEA83C8A378BF1L, HashUtils.xxHash64(buffer, 0));
+    }
+
+    @Test
+    void xxHash64DependsOnTheSeed() {
+        final ByteBuffer buffer = ByteBuffer.wrap("abc".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(HashUtils.xxHash64(buffer, 0), HashUtils.xxHash64(buffer, 1));
+    }
+
+    @Test
+    void contentFingerprintIsCachedInANewDirectory() throws IOException {
+        final Path file = tempDir.resolve("mapped.db");
+        final byte[] content = new byte[1024 * 1024];
+        new Random(42).nextBytes(content);
+        Files.write(file, content);
+        final Path cacheFilePath = tempDir.resolve("neo4j").resolve("fingerprint.txt");
+        final String fingerprint = HashUtils.getContentFingerprintFromFile(file.toString(), cacheFilePath);
+        assertTrue(Files.exists(cacheFilePath));
+        assertEquals(fingerprint, HashUtils.getContentFingerprintFromFile(file.toString(), cacheFilePath));
+        assertEquals(fingerprint, HashUtils.getContentFingerprintFromFile(file.toString(), null));
+        content[0]++;
+        Files.write(file, content);
+        assertNotEquals(fingerprint, HashUtils.getContentFingerprintFromFile(file.toString(), null));
+    }
+
+    private static long xxHash64(final String value) {
+        return HashUtils.xxHash64(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)), 0);
+    }
+}
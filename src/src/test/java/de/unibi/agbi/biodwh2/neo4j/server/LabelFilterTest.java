@@ -0,0 +1,73 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import de.unibi.agbi.biodwh2.neo4j.server.model.CmdArgs;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LabelFilterTest {
+    @Test
+    void emptyFilterIncludesAllLabels() {
+        final LabelFilter filter = LabelFilter.fromCommandLine(new CmdArgs());
+        assertTrue(filter.isEmpty());
+        assertTrue(filter.isNodeLabelIncluded("HGNC_Gene"));
+        assertTrue(filter.isEdgeLabelIncluded("ASSOCIATED_WITH"));
+    }
+
+    @Test
+    void includeListRestrictsLabels() {
+        final CmdArgs commandLine = new CmdArgs();
+        commandLine.includeNodeLabels = List.of("HGNC_Gene");
+        final LabelFilter filter = LabelFilter.fromCommandLine(commandLine);
+        assertTrue(filter.isNodeLabelIncluded("HGNC_Gene"));
+        assertFalse(filter.isNodeLabelIncluded("HGNC_Protein"));
+        // Node label lists do not affect edge labels
+        assertTrue(filter.isEdgeLabelIncluded("HGNC_Protein"));
+    }
+
+    @Test
+    void excludedLabelTakesPrecedenceOverIncludedLabel() {
+        final CmdArgs commandLine = new CmdArgs();
+        commandLine.includeEdgeLabels = List.of("HGNC_ENCODES", "HGNC_MEMBER_OF");
+        commandLine.excludeEdgeLabels = List.of("HGNC_ENCODES");
+        final LabelFilter filter = LabelFilter.fromCommandLine(commandLine);
+        assertFalse(filter.isEdgeLabelIncluded("HGNC_ENCODES"));
+        assertTrue(filter.isEdgeLabelIncluded("HGNC_MEMBER_OF"));
+    }
+
+    @Test
+    void excludedSourceTakesPrecedenceOverIncludedLabel() {
+        final CmdArgs commandLine = new CmdArgs();
+        commandLine.includeNodeLabels = List.of("HGNC_Gene", "UniProt_Protein");
+        commandLine.excludeSources = List.of("HGNC");
+        final LabelFilter filter = LabelFilter.fromCommandLine(commandLine);
+        assertFalse(filter.isNodeLabelIncluded("HGNC_Gene"));
+        assertTrue(filter.isNodeLabelIncluded("UniProt_Protein"));
+    }
+
+    @Test
+    void includeSourcesRestrictsLabelsBySource() {
+        final CmdArgs commandLine = new CmdArgs();
+        commandLine.includeSources = List.of("HGNC");
+        final LabelFilter filter = LabelFilter.fromCommandLine(commandLine);
+        assertTrue(filter.isNodeLabelIncluded("HGNC_Gene"));
+        assertTrue(filter.isEdgeLabelIncluded("HGNC_ENCODES"));
+        assertFalse(filter.isNodeLabelIncluded("UniProt_Protein"));
+        // A label without an underscore is its own source
+        assertTrue(filter.isNodeLabelIncluded("HGNC"));
+        assertFalse(filter.isNodeLabelIncluded("Gene"));
+    }
+
+    @Test
+    void blankValuesAreIgnoredAndValuesAreTrimmed() {
+        final CmdArgs commandLine = new CmdArgs();
+        commandLine.excludeNodeLabels = List.of("", "  ");
+        assertTrue(LabelFilter.fromCommandLine(commandLine).isEmpty());
+        commandLine.excludeNodeLabels = List.of(" HGNC_Gene ");
+        final LabelFilter filter = LabelFilter.fromCommandLine(commandLine);
+        assertFalse(filter.isEmpty());
+        assertFalse(filter.isNodeLabelIncluded("HGNC_Gene"));
+    }
+}
@@ -0,0 +1,40 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Neo4jCsvExporterTest {
+    @Test
+    void widenKeepsEqualTypes() {
+        assertEquals("int", Neo4jCsvExporter.widen("int", "int"));
+        assertEquals("boolean[]", Neo4jCsvExporter.widen("boolean[]", "boolean[]"));
+    }
+
+    @Test
+    void widenIntegralTypesToLong() {
+        assertEquals("long", Neo4jCsvExporter.widen("int", "long"));
+        assertEquals("long", Neo4jCsvExporter.widen("byte", "short"));
+        assertEquals("long[]", Neo4jCsvExporter.widen("int[]", "long[]"));
+    }
+
+    @Test
+    void widenFloatingPointTypesToDouble() {
+        assertEquals("double", Neo4jCsvExporter.widen("int", "double"));
+        assertEquals("double", Neo4jCsvExporter.widen("byte", "float"));
+        assertEquals("double[]", Neo4jCsvExporter.widen("float[]", "long[]"));
+    }
+
+    @Test
+    void widenNonNumericTypesToString() {
+        assertEquals("string", Neo4jCsvExporter.widen("string", "int"));
+        assertEquals("string", Neo4jCsvExporter.widen("boolean", "int"));
+        assertEquals("string[]", Neo4jCsvExporter.widen("boolean[]", "double[]"));
+    }
+
+    @Test
+    void widenArrayAndScalarToStringArray() {
+        assertEquals("string[]", Neo4jCsvExporter.widen("int", "int[]"));
+        assertEquals("string[]", Neo4jCsvExporter.widen("string[]", "string"));
+    }
+}
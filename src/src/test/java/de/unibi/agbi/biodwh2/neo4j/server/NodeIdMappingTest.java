@@ -0,0 +1,71 @@
+package de.unibi.agbi.biodwh2.neo4j.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeIdMappingTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void getReturnsStoredValuesAndMissingForUnknownIds() throws IOException {
+        try (NodeIdMapping mapping = new NodeIdMapping(100, tempDir.resolve("node-ids"), Long.MAX_VALUE)) {
+            mapping.put(0, 10);
+            mapping.put(42, 20);
+            mapping.put(Long.MAX_VALUE - 1, 30);
+            assertEquals(10, mapping.get(0));
+            assertEquals(20, mapping.get(42));
+            assertEquals(30, mapping.get(Long.MAX_VALUE - 1));
+            assertEquals(NodeIdMapping.MISSING, mapping.get(1));
+            assertEquals(3, mapping.size());
+        }
+    }
+
+    @Test
+    void putOverwritesExistingEntries() throws IOException {
+        try (NodeIdMapping mapping = new NodeIdMapping(100, tempDir.resolve("node-ids"), Long.MAX_VALUE)) {
+            mapping.put(7, 1);
+            mapping.put(7, 2);
+            assertEquals(2, mapping.get(7));
+            assertEquals(1, mapping.size());
+        }
+    }
+
+    @Test
+    void resizeKeepsAllEntries() throws IOException {
+        // Far more entries than expected, so every segment has to grow several times
+        final int count = 500_000;
+        try (NodeIdMapping mapping = new NodeIdMapping(0, tempDir.resolve("node-ids"), Long.MAX_VALUE)) {
+            for (long i = 0; i < count; i++)
+                mapping.put(i * 31, i);
+            assertEquals(count, mapping.size());
+            for (long i = 0; i < count; i++)
+                assertEquals(i, mapping.get(i * 31));
+            assertEquals(NodeIdMapping.MISSING, mapping.get(count * 31L + 1));
+        }
+    }
+
+    @Test
+    void spilledTablesAreDeletedOnClose() throws IOException {
+        final Path spillDirectory = tempDir.resolve("node-ids");
+        final int count = 200_000;
+        try (NodeIdMapping mapping = new NodeIdMapping(0, spillDirectory, 0)) {
+            assertTrue(Files.isDirectory(spillDirectory));
+            for (long i = 0; i < count; i++)
+                mapping.put(i, i + 1);
+            for (long i = 0; i < count; i++)
+                assertEquals(i + 1, mapping.get(i));
+            // Replaced tables are deleted on resize, so each segment keeps a single file
+            try (var files = Files.list(spillDirectory)) {
+                assertEquals(64, files.count());
+            }
+        }
+        assertFalse(Files.exists(spillDirectory));
+    }
+}